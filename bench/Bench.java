@@ -0,0 +1,94 @@
+import java.lang.management.ManagementFactory;
+
+// Small stand-in for JMH: warms a body up, then times it and counts the bytes the
+// calling thread allocated. The project has no build descriptor to pull JMH in with,
+// so the suite runs as plain main classes against the compiled src classes.
+public class Bench {
+    // Results go here so the JIT can't drop the benchmarked work
+    public static volatile double sink;
+
+    public interface Body {
+        void run();
+    }
+
+    public static class Result {
+        private final String name;
+        private final double nsPerOp;
+        private final double bytesPerOp;
+        private final int unitsPerOp;
+        private final String unit;
+
+        Result(String name, double nsPerOp, double bytesPerOp, int unitsPerOp, String unit) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.unitsPerOp = unitsPerOp;
+            this.unit = unit;
+        }
+
+        public String getName() { return name; }
+        public double getNsPerOp() { return nsPerOp; }
+        public double getNsPerUnit() { return nsPerOp / unitsPerOp; }
+        public double getBytesPerOp() { return bytesPerOp; }
+
+        @Override
+        public String toString() {
+            return String.format("%-44s %12.1f ns/op %10.2f ns/%-6s %10.1f B/op",
+                    name, nsPerOp, getNsPerUnit(), unit, bytesPerOp);
+        }
+    }
+
+    private static long warmupMillis = Long.getLong("bench.warmup", 1000);
+    private static long measureMillis = Long.getLong("bench.time", 2000);
+
+    // One op of body produces unitsPerOp units (samples, evaluations, paints)
+    public static Result run(String name, int unitsPerOp, String unit, Body body) {
+        runFor(body, warmupMillis);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = runFor(body, measureMillis);
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        Result result = new Result(name, (double) elapsed / ops, (double) bytes / ops, unitsPerOp, unit);
+        System.out.println(result);
+        return result;
+    }
+
+    // Bytes per op once the JIT has settled. Until the hot code is compiled with escape
+    // analysis, short-lived objects show up as allocations however long the warm-up was,
+    // so this keeps running fixed batches until one allocates nothing or maxMillis is up.
+    // Returns the last batch's bytes per op; code that really allocates never gets to 0.
+    public static double steadyStateBytesPerOp(Body body, int batch, long maxMillis) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + maxMillis * 1_000_000L;
+        long bytes;
+        do {
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < batch; i++) {
+                body.run();
+            }
+            bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        } while (bytes > 0 && System.nanoTime() < deadline);
+        return (double) bytes / batch;
+    }
+
+    // Runs the body in batches until the time budget is used up, returns the number of ops
+    private static long runFor(Body body, long millis) {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        int batch = 1;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < batch; i++) {
+                body.run();
+            }
+            ops += batch;
+            if (batch < 1024) batch *= 2;
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,24 @@
+// Runs every benchmark: engine render blocks, expression evaluation and painting.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -Djava.awt.headless=true -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar BenchmarkSuite
+//
+// -Dbench.warmup and -Dbench.time set the warm-up and measurement time per benchmark in ms.
+public class BenchmarkSuite {
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth benchmark");
+
+        System.out.println("== Engine ==");
+        boolean allocationFree = EngineBenchmark.run();
+        System.out.println();
+        System.out.println("== Expressions ==");
+        ExpressionBenchmark.run();
+        System.out.println();
+        System.out.println("== Painting ==");
+        PaintBenchmark.run();
+
+        if (!allocationFree) {
+            System.exit(1);
+        }
+    }
+}
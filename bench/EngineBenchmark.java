@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+
+// One Synthesis.renderBlock call per op, at different operator counts and routings,
+// then a chain patch from 1 to 256 operators to show how the cost scales. The
+// steady-state render path must not allocate, so this exits with status 1 if any
+// of these benchmarks allocated or one of their patches fell back to mXparser. Add --add-modules jdk.incubator.vector to measure
+// the vector kernel.
+public class EngineBenchmark {
+    private static final int BLOCK = 1024;
+    // The allocation check gives the JIT this long to settle, whatever -Dbench.warmup says
+    private static final long SETTLE_MILLIS = 20_000;
+    // Cleared when a benchmarked patch has an operator that goes through mXparser,
+    // or its render loop still allocated once the JIT settled
+    private static boolean allCompiled = true;
+    private static boolean allocationFree = true;
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth benchmark");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if the render loop allocated in steady state
+    public static boolean run() {
+        System.out.println("Render kernel: " + new Synthesis(false).getKernelName());
+
+        for (int numOps : new int[]{1, 3, 10}) {
+            benchmark(numOps + " ops, sparse (all into op 1)", numOps, sparseMatrix(numOps));
+        }
+        benchmark("10 ops, chain 10 -> ... -> 1", 10, chainMatrix(10));
+        benchmark("10 ops, dense acyclic", 10, denseMatrix(10, false));
+        benchmark("10 ops, dense with feedback", 10, denseMatrix(10, true));
+
+        // Cost per sample should grow linearly with operators plus routes
+        int[] counts = {1, 4, 16, 64, 128, 256};
+        Bench.Result[] scaling = new Bench.Result[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            scaling[i] = benchmark(counts[i] + " ops, chain", counts[i], chainMatrix(counts[i]));
+        }
+        for (int i = 0; i < counts.length; i++) {
+            System.out.printf("%-44s %12.2f ns/sample/operator%n",
+                    "scaling, " + counts[i] + " ops", scaling[i].getNsPerUnit() / counts[i]);
+        }
+
+        return allCompiled && allocationFree;
+    }
+
+    private static Bench.Result benchmark(String name, int numOps, float[][] matrix) {
+        Synthesis synth = buildPatch(numOps, matrix);
+        if (!synth.getPatch().isAllocationFree()) {
+            // Would allocate on every sample, whatever the engine does
+            System.out.println("WARNING: " + name + " has operators interpreted by mXparser");
+            allCompiled = false;
+        }
+        double[] out = new double[BLOCK];
+        Bench.Body body = () -> {
+            synth.renderBlock(out, BLOCK);
+            Bench.sink = out[BLOCK - 1];
+        };
+        Bench.Result result = Bench.run("render block, " + name, BLOCK, "sample", body);
+        // The timed run's B/op depends on how far the warm-up got; the check doesn't
+        if (result.getBytesPerOp() > 0 && Bench.steadyStateBytesPerOp(body, 100, SETTLE_MILLIS) > 0) {
+            System.out.println("WARNING: " + name + " allocated in steady state");
+            allocationFree = false;
+        }
+        return result;
+    }
+
+    // Operator 1 is the carrier, the rest are modulators at different ratios
+    static Synthesis buildPatch(int numOps, float[][] matrix) {
+        ArrayList<Operator> ops = new ArrayList<>();
+        for (int i = 0; i < numOps; i++) {
+            Operator op = new Operator(i + 1);
+            if (i > 0) {
+                op.setCarrier(false);
+                op.setFrequency(110 * (i + 1));
+            }
+            ops.add(op);
+        }
+
+        Synthesis synth = new Synthesis(false);
+        synth.setPatch(ops, matrix);
+        synth.noteOn(69, 440);
+        return synth;
+    }
+
+    static float[][] sparseMatrix(int numOps) {
+        float[][] matrix = new float[numOps][numOps];
+        for (int i = 1; i < numOps; i++) {
+            matrix[i][0] = 3;
+        }
+        return matrix;
+    }
+
+    static float[][] chainMatrix(int numOps) {
+        float[][] matrix = new float[numOps][numOps];
+        for (int i = 1; i < numOps; i++) {
+            matrix[i][i - 1] = 3;
+        }
+        return matrix;
+    }
+
+    // Every higher operator modulates every lower one; with feedback also the other way round
+    static float[][] denseMatrix(int numOps, boolean feedback) {
+        float[][] matrix = new float[numOps][numOps];
+        for (int i = 0; i < numOps; i++) {
+            for (int j = 0; j < numOps; j++) {
+                if (i > j || (feedback && i < j)) {
+                    matrix[i][j] = 1;
+                }
+            }
+        }
+        return matrix;
+    }
+}
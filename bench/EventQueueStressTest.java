@@ -0,0 +1,102 @@
+import java.util.concurrent.CountDownLatch;
+
+// Several producer threads post into one EventQueue while the consumer drains it, like
+// the EDT, MIDI and offline drivers feeding the audio thread. Every event must arrive
+// exactly once, and each producer's events in the order it posted them. A small queue
+// keeps it full most of the time, so the full-queue path gets exercised too.
+// Exits with status 1 on a lost, duplicated or reordered event.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar EventQueueStressTest
+public class EventQueueStressTest {
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 1_000_000;
+    // Set when the consumer gives up, so producers don't wait on a full queue forever
+    private static volatile boolean stopped = false;
+
+    public static void main(String[] args) throws InterruptedException {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if any event went missing or arrived out of order
+    public static boolean run() throws InterruptedException {
+        EventQueue queue = new EventQueue(64);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] fullCount = new long[PRODUCERS];
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int id = p;
+            producers[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Frames go up with the sequence number, so sorting by frame keeps each
+                // producer's order; the value carries the sequence number to check it
+                for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                    while (!queue.post(EventQueue.NOTE_ON, i, id, i)) {
+                        if (stopped) return;
+                        fullCount[id]++;
+                        Thread.yield();
+                    }
+                }
+            }, "producer " + p);
+            producers[p].start();
+        }
+
+        long[] expected = new long[PRODUCERS];
+        long received = 0;
+        long total = (long) PRODUCERS * EVENTS_PER_PRODUCER;
+        String error = null;
+        long startNanos = System.nanoTime();
+        start.countDown();
+        while (received < total && error == null) {
+            queue.drain();
+            if (queue.nextFrame() == Long.MAX_VALUE) {
+                Thread.yield();
+            }
+            while (queue.nextFrame() != Long.MAX_VALUE) {
+                int id = queue.nextNote();
+                long seq = (long) queue.nextValue();
+                if (queue.nextType() != EventQueue.NOTE_ON || id < 0 || id >= PRODUCERS) {
+                    error = "corrupt event";
+                    break;
+                }
+                if (seq != expected[id] || queue.nextFrame() != seq) {
+                    error = "producer " + id + ": got " + seq + ", expected " + expected[id];
+                    break;
+                }
+                expected[id]++;
+                received++;
+                queue.remove();
+            }
+            if (System.nanoTime() - startNanos > 60_000_000_000L) {
+                error = "timed out after " + received + " events";
+            }
+        }
+        stopped = error != null;
+        for (Thread t : producers) {
+            t.join();
+        }
+        queue.drain();
+        if (error == null && queue.nextFrame() != Long.MAX_VALUE) {
+            error = "events left over after all were received";
+        }
+
+        long full = 0;
+        for (long f : fullCount) {
+            full += f;
+        }
+        if (error != null) {
+            System.out.println("FAIL " + error);
+            return false;
+        }
+        System.out.printf("OK   %d events from %d producers in %.2f s, queue full %d times%n",
+                received, PRODUCERS, (System.nanoTime() - startNanos) / 1e9, full);
+        return true;
+    }
+}
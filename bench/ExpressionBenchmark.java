@@ -0,0 +1,48 @@
+import org.mariuszgromada.math.mxparser.*;
+import java.util.function.DoubleUnaryOperator;
+
+// Evaluates one block's worth of t values through raw mXparser, the compiled
+// evaluator tree and both wavetable lookups.
+public class ExpressionBenchmark {
+    private static final int N = 1024;
+    private static final String[] EXPRESSIONS = {
+            "sin(t)",
+            "sin(t) + 0.5*sin(2*t) + 0.25*cos(3*t)",
+            "exp(-t)*sin(5*t) + tanh(3*sin(t))"
+    };
+
+    public static void main(String[] args) {
+        License.iConfirmNonCommercialUse("FMSynth benchmark");
+        run();
+    }
+
+    public static void run() {
+        double[] ts = new double[N];
+        for (int i = 0; i < N; i++) {
+            ts[i] = i * 2 * Math.PI / N;
+        }
+
+        for (String expr : EXPRESSIONS) {
+            Function function = new Function("f(t) = " + expr);
+            DoubleUnaryOperator compiled = ExpressionCompiler.compile(expr);
+            Wavetable linear = Wavetable.render(expr, "2*pi", compiled, 2048, Wavetable.LINEAR);
+            Wavetable cubic = Wavetable.render(expr, "2*pi", compiled, 2048, Wavetable.CUBIC);
+
+            System.out.println(expr);
+            Bench.run("  mXparser Function.calculate", N, "eval", () -> {
+                double sum = 0;
+                for (double t : ts) sum += function.calculate(t);
+                Bench.sink = sum;
+            });
+            Bench.run("  ExpressionCompiler", N, "eval", () -> evaluate(compiled, ts));
+            Bench.run("  Wavetable linear", N, "eval", () -> evaluate(linear, ts));
+            Bench.run("  Wavetable cubic", N, "eval", () -> evaluate(cubic, ts));
+        }
+    }
+
+    private static void evaluate(DoubleUnaryOperator func, double[] ts) {
+        double sum = 0;
+        for (double t : ts) sum += func.applyAsDouble(t);
+        Bench.sink = sum;
+    }
+}
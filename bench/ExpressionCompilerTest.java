@@ -0,0 +1,116 @@
+import org.mariuszgromada.math.mxparser.*;
+import java.util.function.DoubleUnaryOperator;
+
+// Checks that ExpressionCompiler gives the same results as mXparser: compiled
+// expressions within a tolerance, and the ones it can't handle falling back to
+// mXparser. Exits with status 1 on any mismatch.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar ExpressionCompilerTest
+public class ExpressionCompilerTest {
+    private static final double TOLERANCE = 1e-9;
+
+    // Handled by the compiler itself
+    private static final String[] COMPILED = {
+            "sin(t)",
+            "sin(t) + 0.5*sin(2*t) + 0.25*cos(3*t)",
+            "exp(-t)*sin(5*t) + tanh(3*sin(t))",
+            "-t^2",
+            "2^-1*t",
+            "2^3^2",
+            "log(2, t) + ln(t) + log10(t) + log2(t)",
+            "min(sin(t), cos(t), 0.5) + max(t, 1)",
+            // mXparser rounds results within rounding error of an integer (cos(pi/2) is 0,
+            // not 6e-17), so sgn, floor and ceil are only checked away from their jumps
+            "sqrt(abs(t)) * sgn(t - 0.3) + floor(t + 0.3) - ceil(t - 0.3)",
+            "asin(sin(t)) + acos(cos(t)) + atan(t) + sinh(t/4) + cosh(t/4)",
+            "pi*e*t",
+            // Special cases the compiler copies from mXparser
+            "tan(t)",           // NaN at odd multiples of pi/2
+            "1/(t - pi)",       // division by 0 is NaN
+            "(-8)^(1/3) + t",   // odd root of a negative number
+            "(t - 4)^(1/3)",
+            "(t - 4)^(1/2)"
+    };
+
+    // Left to mXparser
+    private static final String[] INTERPRETED = {
+            "-2^2 + t",         // mXparser reads this as (-2)^2
+            "2t",               // implied multiplication
+            "2pi*t",
+            "sin(2t)",
+            "1e-3*t",           // scientific notation
+            "2.5E2*sin(t)"
+    };
+
+    public static void main(String[] args) {
+        License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if any expression disagreed with mXparser
+    public static boolean run() {
+        double[] ts = points();
+        int failures = 0;
+        for (String expr : COMPILED) {
+            failures += check(expr, ts, false);
+        }
+        for (String expr : INTERPRETED) {
+            failures += check(expr, ts, true);
+        }
+        System.out.println((COMPILED.length + INTERPRETED.length) + " expressions, " + failures + " failed");
+        return failures == 0;
+    }
+
+    // t over a few periods plus the points where the special cases kick in
+    private static double[] points() {
+        double[] ts = new double[520];
+        for (int i = 0; i < 500; i++) {
+            ts[i] = -4 * Math.PI + i * 8 * Math.PI / 500;
+        }
+        int n = 500;
+        for (int k = -5; k <= 5; k += 2) {
+            ts[n++] = k * Math.PI / 2;
+        }
+        ts[n++] = Math.PI;
+        ts[n++] = 0;
+        ts[n++] = 4;
+        ts[n++] = -4;
+        while (n < ts.length) {
+            ts[n] = n - 510;
+            n++;
+        }
+        return ts;
+    }
+
+    private static int check(String expr, double[] ts, boolean interpreted) {
+        DoubleUnaryOperator compiled = ExpressionCompiler.compile(expr);
+        if ((ExpressionCompiler.tryCompile(expr) == null) != interpreted) {
+            System.out.println("FAIL " + expr + ": expected " + (interpreted ? "mXparser fallback" : "compiled"));
+            return 1;
+        }
+
+        Function reference = new Function("f(t) = " + expr);
+        for (double t : ts) {
+            double expected = reference.calculate(t);
+            double actual = compiled.applyAsDouble(t);
+            if (!matches(expected, actual)) {
+                System.out.println("FAIL " + expr + " at t = " + t + ": mXparser " + expected + ", compiled " + actual);
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean matches(double expected, double actual) {
+        if (Double.isNaN(expected) || Double.isNaN(actual)) {
+            return Double.isNaN(expected) && Double.isNaN(actual);
+        }
+        if (Double.isInfinite(expected) || Double.isInfinite(actual)) {
+            return expected == actual;
+        }
+        return Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected));
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Random;
+
+// Checks FFT.powerSpectrum against a naive O(N^2) DFT at every size from 4 to 4096,
+// on noise plus a few sines with and without whole periods in the window.
+// Exits with status 1 on any mismatch.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar FFTTest
+public class FFTTest {
+    // Relative to the largest bin, the naive sums lose more precision than that
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if any bin differed from the DFT
+    public static boolean run() {
+        Random random = new Random(17);
+        boolean ok = true;
+        for (int n = 4; n <= 4096; n *= 2) {
+            double[] input = new double[n];
+            for (int i = 0; i < n; i++) {
+                input[i] = random.nextGaussian() * 0.1
+                        + Math.sin(2 * Math.PI * 3 * i / n)
+                        + 0.5 * Math.cos(2 * Math.PI * 7.3 * i / n + 1)
+                        + 0.25;
+            }
+
+            double[] power = new double[n / 2 + 1];
+            new FFT(n).powerSpectrum(input, power);
+            double[] expected = naivePowerSpectrum(input);
+
+            double peak = 0;
+            for (double p : expected) {
+                peak = Math.max(peak, p);
+            }
+            double worst = 0;
+            for (int k = 0; k <= n / 2; k++) {
+                worst = Math.max(worst, Math.abs(power[k] - expected[k]) / peak);
+            }
+            boolean match = worst <= TOLERANCE;
+            System.out.printf("%s N = %-5d max relative difference %.3g%n", match ? "OK  " : "FAIL", n, worst);
+            ok &= match;
+        }
+        return ok;
+    }
+
+    // |X[k]|^2 straight from the definition, X[k] = sum x[j] e^(-2 pi i j k / N)
+    private static double[] naivePowerSpectrum(double[] input) {
+        int n = input.length;
+        double[] power = new double[n / 2 + 1];
+        for (int k = 0; k <= n / 2; k++) {
+            double re = 0;
+            double im = 0;
+            for (int j = 0; j < n; j++) {
+                // Reduce j * k first so the angle stays small and exact
+                double angle = 2 * Math.PI * ((long) j * k % n) / n;
+                re += input[j] * Math.cos(angle);
+                im -= input[j] * Math.sin(angle);
+            }
+            power[k] = re * re + im * im;
+        }
+        return power;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+
+// Checks that the vector kernel renders within 1e-8 of the scalar one, as VectorKernel
+// promises for smooth operator functions. Skipped when the JVM runs without the
+// jdk.incubator.vector module. Exits with status 1 on a larger difference.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java --add-modules jdk.incubator.vector -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar KernelToleranceTest
+public class KernelToleranceTest {
+    private static final double TOLERANCE = 1e-8;
+    private static final int BLOCK = 1024;
+    // About a second, long enough for the phases to wrap many times
+    private static final int BLOCKS = 43;
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if the kernels disagreed by more than the tolerance
+    public static boolean run() {
+        if (engine(true).getKernelName().equals(engine(false).getKernelName())) {
+            System.out.println("SKIP no vector kernel, start with --add-modules jdk.incubator.vector");
+            return true;
+        }
+
+        boolean ok = check("3 ops, sparse", 3, EngineBenchmark.sparseMatrix(3));
+        ok &= check("10 ops, chain", 10, EngineBenchmark.chainMatrix(10));
+        ok &= check("10 ops, dense acyclic", 10, EngineBenchmark.denseMatrix(10, false));
+        ok &= check("10 ops, dense with feedback", 10, EngineBenchmark.denseMatrix(10, true));
+        return ok;
+    }
+
+    private static boolean check(String name, int numOps, float[][] matrix) {
+        Synthesis scalar = engine(true);
+        Synthesis vector = engine(false);
+        ArrayList<Operator> ops = operators(numOps);
+        scalar.setPatch(ops, matrix);
+        vector.setPatch(ops, matrix);
+        // Two notes so the per-voice state is covered too, the second one mid-block
+        for (Synthesis synth : new Synthesis[] {scalar, vector}) {
+            synth.noteOnAt(0, 57, 220);
+            synth.noteOnAt(300, 64, 329.63);
+        }
+
+        double[] expected = new double[BLOCK];
+        double[] actual = new double[BLOCK];
+        double worst = 0;
+        for (int b = 0; b < BLOCKS; b++) {
+            scalar.renderBlock(expected, BLOCK);
+            vector.renderBlock(actual, BLOCK);
+            for (int i = 0; i < BLOCK; i++) {
+                worst = Math.max(worst, Math.abs(expected[i] - actual[i]));
+            }
+        }
+
+        boolean ok = worst <= TOLERANCE;
+        System.out.printf("%s %-28s max difference %.3g%n", ok ? "OK  " : "FAIL", name, worst);
+        return ok;
+    }
+
+    private static Synthesis engine(boolean scalar) {
+        if (scalar) {
+            System.setProperty("fmsynth.kernel", "scalar");
+        } else {
+            System.clearProperty("fmsynth.kernel");
+        }
+        Synthesis synth = new Synthesis(false);
+        System.clearProperty("fmsynth.kernel");
+        return synth;
+    }
+
+    // Operator 1 is the carrier, the rest are modulators at different ratios
+    private static ArrayList<Operator> operators(int numOps) {
+        ArrayList<Operator> ops = new ArrayList<>();
+        for (int i = 0; i < numOps; i++) {
+            Operator op = new Operator(i + 1);
+            if (i > 0) {
+                op.setCarrier(false);
+                op.setFrequency(110 * (i + 1));
+            }
+            ops.add(op);
+        }
+        return ops;
+    }
+}
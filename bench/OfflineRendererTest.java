@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Checks that an OfflineRenderer gives the same samples for a patch whatever it
+// rendered before, like BatchRenderer's reused per-thread renderers rely on, and
+// that overlapping notes of the same pitch end one by one. Exits with status 1 on
+// any difference.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar OfflineRendererTest
+public class OfflineRendererTest {
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if a reused renderer didn't match a fresh one, or a note ended early
+    public static boolean run() {
+        List<OfflineRenderer.Note> notes = Arrays.asList(
+                new OfflineRenderer.Note(60, 0, 0.3),
+                new OfflineRenderer.Note(67, 0.1, 0.3));
+
+        // Same operators, different routing: the second patch drops and adds routes
+        List<Operator> ops = operators(3);
+        float[][] first = new float[3][3];
+        first[1][0] = 8;
+        first[2][1] = 5;
+        float[][] second = new float[3][3];
+        second[2][0] = 2;
+
+        short[] fresh = new OfflineRenderer().render(ops, second, notes);
+
+        OfflineRenderer reused = new OfflineRenderer();
+        reused.render(ops, first, notes);
+        boolean ok = report("reused renderer after other routing", fresh, reused.render(ops, second, notes));
+        // And after a patch with a different operator count
+        reused.render(operators(5), new float[5][5], notes);
+        ok &= report("reused renderer after other operators", fresh, reused.render(ops, second, notes));
+
+        // The same pitch again inside a longer note: once the short one has faded out,
+        // the long one plays on exactly as if it were alone
+        List<OfflineRenderer.Note> overlapping = Arrays.asList(
+                new OfflineRenderer.Note(60, 0, 1.0),
+                new OfflineRenderer.Note(60, 0.2, 0.2));
+        short[] both = new OfflineRenderer().render(ops, second, overlapping);
+        short[] alone = new OfflineRenderer().render(ops, second, overlapping.subList(0, 1));
+        int from = (int) (0.6 * 44100);
+        int to = (int) (0.9 * 44100);
+        ok &= report("overlapping notes of one pitch", Arrays.copyOfRange(alone, from, to), Arrays.copyOfRange(both, from, to));
+        return ok;
+    }
+
+    private static List<Operator> operators(int count) {
+        ArrayList<Operator> ops = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Operator op = new Operator(i + 1);
+            if (i > 0) {
+                op.setCarrier(false);
+                op.setFrequency(220 * (i + 1));
+            }
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    private static boolean report(String name, short[] expected, short[] actual) {
+        int differing = 0;
+        int first = -1;
+        for (int i = 0; i < Math.max(expected.length, actual.length); i++) {
+            boolean same = i < expected.length && i < actual.length && expected[i] == actual[i];
+            if (!same) {
+                if (first < 0) first = i;
+                differing++;
+            }
+        }
+        if (differing == 0) {
+            System.out.println("OK   " + name);
+            return true;
+        }
+        System.out.println("FAIL " + name + ": " + differing + " of "
+                + expected.length + " samples differ, starting at " + first);
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Paints the operator Canvas and the OscilloscopePanel into an offscreen image.
+// Works headless (-Djava.awt.headless=true).
+public class PaintBenchmark {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 200;
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth benchmark");
+        run();
+    }
+
+    public static void run() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+
+        Canvas canvas = new Canvas("Operator");
+        canvas.setSize(WIDTH, HEIGHT);
+        canvas.setFunction("sin(t) + 0.5*sin(2*t)", "2*pi");
+        // The preview is sampled in the background and swapped in on the EDT
+        while (canvas.isPreviewPending()) {
+            sleep(5);
+        }
+        Bench.run("Canvas.paintComponent, cached", 1, "paint", () -> paint(canvas, image));
+        // Alternating the size invalidates the cached preview on every paint
+        int[] resizes = {0};
+        Bench.run("Canvas.paintComponent, re-rendered", 1, "paint", () -> {
+            canvas.setSize(WIDTH - (resizes[0]++ & 1), HEIGHT);
+            paint(canvas, image);
+        });
+
+        OscilloscopePanel scope = new OscilloscopePanel();
+        scope.setSize(WIDTH, HEIGHT);
+        short[] samples = new short[800];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (Math.sin(i * 0.05) * 8000);
+        }
+        scope.updateSamples(samples);
+        Bench.run("OscilloscopePanel.paintComponent", 1, "paint", () -> paint(scope, image));
+
+        // Triggered 2 s window: 88200 samples, still one min/max pair per pixel to draw
+        OscilloscopePanel live = new OscilloscopePanel();
+        live.setSize(WIDTH, HEIGHT);
+        ScopeTap tap = new ScopeTap(1 << 17, 44100);
+        live.setTap(tap);
+        live.getScope().setColumns(WIDTH);
+        live.getScope().setTimeWindow(2);
+        feed(tap, 2.5);
+        Bench.run("OscilloscopePanel.paintComponent, 2 s window", 1, "paint", () -> paint(live, image));
+        live.setTap(null);
+    }
+
+    // Streams a 220 Hz tone into the tap in real-time-sized blocks
+    private static void feed(ScopeTap tap, double seconds) {
+        short[] block = new short[4096];
+        int total = (int) (seconds * tap.getSampleRate());
+        for (int done = 0; done < total; done += block.length) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (short) (Math.sin((done + i) * 2 * Math.PI * 220 / tap.getSampleRate()) * 8000);
+            }
+            tap.write(block, block.length);
+            sleep(5);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void paint(javax.swing.JComponent component, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            if (component instanceof Canvas) {
+                ((Canvas) component).paintComponent(g);
+            } else {
+                ((OscilloscopePanel) component).paintComponent(g);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks the routing Patch compiles from the mod matrix: every route that isn't
+// marked as feedback goes from an operator earlier in the render order to a later
+// one, feedback routes only where they close a cycle, and the depths and route set
+// match the matrix. Exits with status 1 on any mismatch.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar PatchRoutingTest
+public class PatchRoutingTest {
+
+    public static void main(String[] args) {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if any routing was compiled wrong
+    public static boolean run() {
+        boolean ok = true;
+
+        // 4 -> 3 -> 2 -> 1 renders in one pass, from the top of the chain down
+        Patch chain = compile(EngineBenchmark.chainMatrix(4));
+        ok &= report("chain order", orderIs(chain, 3, 2, 1, 0) && !chain.hasFeedback() && check(chain, EngineBenchmark.chainMatrix(4)));
+
+        // 1 <-> 2: the search starts at 1, so 2 -> 1 is the route that closes the cycle
+        float[][] pair = new float[2][2];
+        pair[0][1] = 4;
+        pair[1][0] = 6;
+        Patch cycle = compile(pair);
+        ok &= report("two-operator cycle", cycle.hasFeedback() && delayed(cycle, 1, 0) && !delayed(cycle, 0, 1) && check(cycle, pair));
+
+        // A chain with one route back up: only that route is feedback
+        float[][] loop = EngineBenchmark.chainMatrix(5);
+        loop[0][4] = 2;
+        Patch looped = compile(loop);
+        int feedbackRoutes = 0;
+        for (int r = 0; r < looped.getRouteCount(); r++) {
+            if (looped.isInputDelayed(r)) feedbackRoutes++;
+        }
+        ok &= report("chain with feedback", feedbackRoutes == 1 && check(looped, loop));
+
+        float[][] dense = EngineBenchmark.denseMatrix(10, false);
+        ok &= report("dense acyclic", check(compile(dense), dense) && !compile(dense).hasFeedback());
+        float[][] denseFeedback = EngineBenchmark.denseMatrix(10, true);
+        ok &= report("dense with feedback", check(compile(denseFeedback), denseFeedback));
+
+        // Random sparse graphs, with and without cycles
+        Random random = new Random(8);
+        int failed = 0;
+        for (int k = 0; k < 200; k++) {
+            int n = 1 + random.nextInt(40);
+            float[][] matrix = new float[n][n];
+            boolean acyclic = k % 2 == 0;
+            for (int i = 0; i < n * 2; i++) {
+                int src = random.nextInt(n);
+                int dst = random.nextInt(n);
+                if (src == dst || (acyclic && src < dst)) continue;
+                matrix[src][dst] = 0.5f + random.nextInt(20) * 0.5f;
+            }
+            Patch p = compile(matrix);
+            if (!check(p, matrix) || (acyclic && p.hasFeedback())) failed++;
+        }
+        ok &= report("200 random graphs, " + failed + " wrong", failed == 0);
+
+        ok &= report("incremental edits match a full compile", incrementalEdits(new Random(21)));
+        return ok;
+    }
+
+    // Operators added and removed and cells set one at a time, the way the editor does it,
+    // on a ModMatrix and a Patch side by side: after every step the patch has the routes of
+    // the matrix and the operators of the list
+    private static boolean incrementalEdits(Random random) {
+        ArrayList<Operator> ops = new ArrayList<>();
+        ModMatrix matrix = new ModMatrix();
+        Patch p = Patch.EMPTY;
+        for (int step = 0; step < 2000; step++) {
+            int n = ops.size();
+            int action = random.nextInt(10);
+            if (n < 2 || (action == 0 && n < 40)) {
+                Operator op = new Operator(n + 1);
+                op.setFrequency(100 + step);
+                ops.add(op);
+                matrix.addOperator();
+                p = p.withOperatorAdded(op, false, 2048, Wavetable.LINEAR);
+            } else if (action == 1) {
+                int index = random.nextInt(n);
+                ops.remove(index);
+                matrix.removeOperator(index);
+                p = p.withOperatorRemoved(index);
+            } else {
+                int src = random.nextInt(n);
+                int dst = random.nextInt(n);
+                // A third of the edits clear a cell
+                float depth = random.nextInt(3) == 0 ? 0 : 0.5f + random.nextInt(20) * 0.5f;
+                matrix.set(src, dst, depth);
+                p = p.withRoute(src, dst, depth);
+            }
+
+            if (p.getNumOperators() != ops.size()) return false;
+            for (int i = 0; i < ops.size(); i++) {
+                if (p.getFrequency(i) != ops.get(i).getFrequency()) return false;
+            }
+            // Cleared routes are still fading out in p itself
+            if (!check(p.getSettled(), matrix.toArray())) return false;
+        }
+        return true;
+    }
+
+    private static boolean report(String name, boolean ok) {
+        System.out.println((ok ? "OK   " : "FAIL ") + name);
+        return ok;
+    }
+
+    private static Patch compile(float[][] matrix) {
+        ArrayList<Operator> ops = new ArrayList<>();
+        for (int i = 0; i < matrix.length; i++) {
+            ops.add(new Operator(i + 1));
+        }
+        return Patch.compile(ops, matrix, null, false, 2048, Wavetable.LINEAR);
+    }
+
+    // The order is a permutation, routes match the matrix, and a route is feedback
+    // exactly when it goes back up the order
+    private static boolean check(Patch p, float[][] matrix) {
+        int n = p.getNumOperators();
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        for (int k = 0; k < n; k++) {
+            int op = p.getOrder(k);
+            if (position[op] != -1) return false;
+            position[op] = k;
+        }
+
+        int expectedRoutes = 0;
+        for (int src = 0; src < n; src++) {
+            for (int dst = 0; dst < n; dst++) {
+                if (src != dst && matrix[src][dst] != 0) expectedRoutes++;
+            }
+        }
+        if (p.getRouteCount() != expectedRoutes) return false;
+
+        boolean feedback = false;
+        for (int dst = 0; dst < n; dst++) {
+            int previous = -1;
+            for (int r = p.getInputStart(dst); r < p.getInputEnd(dst); r++) {
+                int src = p.getInputSource(r);
+                // Inputs are in source order, without duplicates
+                if (src <= previous) return false;
+                previous = src;
+                if (p.getInputDepth(r) != matrix[src][dst] / 10.0) return false;
+                if (p.isInputDelayed(r) != (position[src] > position[dst])) return false;
+                feedback |= p.isInputDelayed(r);
+            }
+        }
+        return feedback == p.hasFeedback();
+    }
+
+    private static boolean orderIs(Patch p, int... order) {
+        for (int k = 0; k < order.length; k++) {
+            if (p.getOrder(k) != order[k]) return false;
+        }
+        return true;
+    }
+
+    private static boolean delayed(Patch p, int src, int dst) {
+        for (int r = p.getInputStart(dst); r < p.getInputEnd(dst); r++) {
+            if (p.getInputSource(r) == src) return p.isInputDelayed(r);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Random;
+
+// One thread writes a counting sequence of samples into a PcmRingBuffer in random
+// chunk sizes while another reads it back in different ones, like the render and
+// output threads. Every sample must come out once and in order, and the fill level
+// must stay within the capacity. Exits with status 1 on any mismatch.
+//
+//   javac -cp <src classes>:libraries/MathParser.org-mXparser.jar -d out/bench bench/*.java
+//   java -cp out/bench:<src classes>:libraries/MathParser.org-mXparser.jar PcmRingBufferStressTest
+public class PcmRingBufferStressTest {
+    private static final long SAMPLES = 100_000_000L;
+    private static final int MAX_CHUNK = 700;
+    // Set when the consumer gives up, so the producer doesn't wait on a full ring forever
+    private static volatile boolean stopped = false;
+
+    public static void main(String[] args) throws InterruptedException {
+        org.mariuszgromada.math.mxparser.License.iConfirmNonCommercialUse("FMSynth test");
+        if (!run()) {
+            System.exit(1);
+        }
+    }
+
+    // Returns false if a sample was lost, duplicated or corrupted
+    public static boolean run() throws InterruptedException {
+        // Not a multiple of either chunk size, so copies wrap at every offset
+        PcmRingBuffer ring = new PcmRingBuffer(1000);
+        long startNanos = System.nanoTime();
+
+        Thread producer = new Thread(() -> {
+            Random random = new Random(1);
+            short[] chunk = new short[MAX_CHUNK];
+            long next = 0;
+            while (next < SAMPLES) {
+                int n = (int) Math.min(1 + random.nextInt(MAX_CHUNK), SAMPLES - next);
+                for (int i = 0; i < n; i++) {
+                    chunk[i] = (short) (next + i);
+                }
+                int offset = 0;
+                while (offset < n) {
+                    int written = ring.write(chunk, offset, n - offset);
+                    if (written == 0) {
+                        if (stopped) return;
+                        Thread.yield();
+                    }
+                    offset += written;
+                }
+                next += n;
+            }
+        }, "producer");
+        producer.start();
+
+        Random random = new Random(2);
+        short[] chunk = new short[MAX_CHUNK];
+        long expected = 0;
+        String error = null;
+        while (expected < SAMPLES && error == null) {
+            int size = ring.size();
+            if (size < 0 || size > ring.capacity()) {
+                error = "fill level " + size + " outside 0.." + ring.capacity();
+                break;
+            }
+            int n = ring.read(chunk, 0, 1 + random.nextInt(MAX_CHUNK));
+            if (n == 0) Thread.yield();
+            for (int i = 0; i < n; i++) {
+                if (chunk[i] != (short) (expected + i)) {
+                    error = "sample " + (expected + i) + " was " + chunk[i];
+                    break;
+                }
+            }
+            expected += n;
+            if (System.nanoTime() - startNanos > 60_000_000_000L) {
+                error = "timed out after " + expected + " samples";
+            }
+        }
+        stopped = error != null;
+        producer.join();
+        if (error == null && ring.size() != 0) {
+            error = ring.size() + " samples left over";
+        }
+
+        if (error != null) {
+            System.out.println("FAIL " + error);
+            return false;
+        }
+        System.out.printf("OK   %d samples through a %d-sample ring in %.2f s%n",
+                expected, ring.capacity(), (System.nanoTime() - startNanos) / 1e9);
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+import jdk.incubator.vector.*;
+
+// RenderKernel on the JDK Vector API, at the platform's preferred width
+// (4 doubles on AVX2, 8 on AVX-512). Needs --add-modules jdk.incubator.vector
+// at compile and run time, so it lives in its own source root (src-vector) that's
+// compiled on top of src; RenderKernel.create() only loads it when the module is there.
+//
+// Everything except phaseRamp matches ScalarKernel exactly. phaseRamp computes
+// phase + i * inc directly instead of accumulating, so phases drift from the scalar
+// ones by rounding only (below 1e-12 cycles over a block), and it wraps into [0, 1)
+// where the scalar loop keeps an exact 1.0. Rendered output stays within 1e-8 of the
+// scalar path for smooth operator functions, well below one 16-bit PCM step.
+public class VectorKernel implements RenderKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    // Adding this rounds any |x| < 2^51 to an integer, see phaseRamp
+    private static final double ROUNDING_BIAS = 1.5 * (1L << 52);
+
+    private final double[] lane = new double[SPECIES.length()];
+    private final double[] pcmScratch = new double[SPECIES.length()];
+
+    public VectorKernel() {
+        for (int i = 0; i < lane.length; i++) {
+            lane[i] = i;
+        }
+    }
+
+    public double phaseRamp(double[] dst, double phase, double inc, int frames) {
+        DoubleVector offsets = DoubleVector.fromArray(SPECIES, lane, 0).mul(inc);
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector p = offsets.add(phase + i * inc);
+            // No FLOOR lane op in this JDK, and the D2L/L2D conversions aren't intrinsified
+            // everywhere (they box on AVX-512). Round to nearest through the bias instead,
+            // then step down where that rounded up; this is exactly Math.floor
+            DoubleVector rounded = p.add(ROUNDING_BIAS).sub(ROUNDING_BIAS);
+            DoubleVector floor = rounded.sub(1.0, rounded.compare(VectorOperators.GT, p));
+            p.sub(floor).intoArray(dst, i);
+        }
+        for (; i < frames; i++) {
+            double p = phase + i * inc;
+            dst[i] = p - Math.floor(p);
+        }
+        double next = phase + frames * inc;
+        return next - Math.floor(next);
+    }
+
+    public void clear(double[] dst, int frames) {
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            zero.intoArray(dst, i);
+        }
+        for (; i < frames; i++) {
+            dst[i] = 0;
+        }
+    }
+
+    public void add(double[] dst, double[] src, int frames) {
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dst, i);
+            d.add(DoubleVector.fromArray(SPECIES, src, i)).intoArray(dst, i);
+        }
+        for (; i < frames; i++) {
+            dst[i] += src[i];
+        }
+    }
+
+    public void multiplyAdd(double[] dst, double[] src, double gain, int frames) {
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            // mul then add rather than fma, so results match the scalar kernel exactly
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dst, i);
+            d.add(DoubleVector.fromArray(SPECIES, src, i).mul(gain)).intoArray(dst, i);
+        }
+        for (; i < frames; i++) {
+            dst[i] += src[i] * gain;
+        }
+    }
+
+    public void multiplyAddRamp(double[] dst, double[] src, double gain, double step, int frames) {
+        DoubleVector lanes = DoubleVector.fromArray(SPECIES, lane, 0);
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            // Frame index first, then the same gain + i * step as the scalar loop
+            DoubleVector g = lanes.add(i).mul(step).add(gain);
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dst, i);
+            d.add(DoubleVector.fromArray(SPECIES, src, i).mul(g)).intoArray(dst, i);
+        }
+        for (; i < frames; i++) {
+            dst[i] += src[i] * (gain + i * step);
+        }
+    }
+
+    public void toPcm(double[] src, double gain, short[] dst, int frames) {
+        int i = 0;
+        int bound = SPECIES.loopBound(frames);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, src, i)
+                    .mul(gain)
+                    .max(-1)
+                    .min(1)
+                    .mul(Short.MAX_VALUE);
+            // Narrowing stays scalar, the D2I lane conversion allocates where it isn't intrinsified
+            v.intoArray(pcmScratch, 0);
+            for (int k = 0; k < pcmScratch.length; k++) {
+                dst[i + k] = (short) pcmScratch[k];
+            }
+        }
+        for (; i < frames; i++) {
+            double out = Math.max(-1, Math.min(1, src[i] * gain));
+            dst[i] = (short)(out * Short.MAX_VALUE);
+        }
+    }
+
+    public String getName() {
+        return "vector (" + SPECIES.length() + " x double)";
+    }
+}
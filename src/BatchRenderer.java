@@ -0,0 +1,140 @@
+import org.mariuszgromada.math.mxparser.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Renders many patch definitions to WAV previews in parallel. Each worker thread
+// owns its own OfflineRenderer (and so its own Synthesis), nothing mutable is shared.
+//
+// Usage: BatchRenderer [-o outputDir] [-threads n] <patch file or directory>...
+public class BatchRenderer {
+    private final ForkJoinPool pool;
+    private final ThreadLocal<OfflineRenderer> renderers = ThreadLocal.withInitial(OfflineRenderer::new);
+
+    public static class Result {
+        private final String name;
+        private final File output;
+        private final OfflineRenderer.Result render;
+        private final String error;
+
+        Result(String name, File output, OfflineRenderer.Result render, String error) {
+            this.name = name;
+            this.output = output;
+            this.render = render;
+            this.error = error;
+        }
+
+        public String getName() { return name; }
+        public File getOutput() { return output; }
+        public OfflineRenderer.Result getRender() { return render; }
+        public String getError() { return error; }
+        public boolean isOk() { return error == null; }
+    }
+
+    public BatchRenderer(int threads) {
+        pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    public static List<OfflineRenderer.Note> defaultNotes() {
+        // A single middle C, long enough to hear the timbre
+        return Arrays.asList(new OfflineRenderer.Note(60, 0, 2.0));
+    }
+
+    public List<Result> render(List<File> patchFiles, File outputDir, List<OfflineRenderer.Note> notes) throws InterruptedException {
+        ArrayList<Callable<Result>> jobs = new ArrayList<>();
+        for (File file : patchFiles) {
+            jobs.add(() -> renderOne(file, outputDir, notes));
+        }
+
+        ArrayList<Result> results = new ArrayList<>();
+        for (Future<Result> future : pool.invokeAll(jobs)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                results.add(new Result("?", null, null, String.valueOf(e.getCause())));
+            }
+        }
+        return results;
+    }
+
+    private Result renderOne(File patchFile, File outputDir, List<OfflineRenderer.Note> notes) {
+        String name = patchFile.getName();
+        try {
+            PatchDefinition def = PatchDefinition.load(patchFile);
+            name = def.getName();
+            File wav = new File(outputDir, name + ".wav");
+            OfflineRenderer.Result render = renderers.get().renderToFile(def.getOperators(), def.getMatrix(), notes, wav);
+            return new Result(name, wav, render, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(name, null, null, e.getMessage());
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        License.iConfirmNonCommercialUse("Gosha Rassokhin");
+
+        File outputDir = new File(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<File> patchFiles = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                outputDir = new File(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                File f = new File(args[i]);
+                if (f.isDirectory()) {
+                    File[] children = f.listFiles((dir, n) -> n.endsWith(".patch") || n.endsWith(".properties"));
+                    if (children != null) {
+                        Arrays.sort(children);
+                        patchFiles.addAll(Arrays.asList(children));
+                    }
+                } else {
+                    patchFiles.add(f);
+                }
+            }
+        }
+        if (patchFiles.isEmpty()) {
+            System.err.println("Usage: BatchRenderer [-o outputDir] [-threads n] <patch file or directory>...");
+            System.exit(2);
+        }
+        outputDir.mkdirs();
+
+        BatchRenderer batch = new BatchRenderer(threads);
+        long start = System.nanoTime();
+        List<Result> results = batch.render(patchFiles, outputDir, defaultNotes());
+        long elapsed = System.nanoTime() - start;
+        batch.shutdown();
+
+        // Summary
+        double audioSeconds = 0;
+        double renderSeconds = 0;
+        int failed = 0;
+        for (Result r : results) {
+            if (r.isOk()) {
+                OfflineRenderer.Result render = r.getRender();
+                audioSeconds += render.getAudioSeconds();
+                renderSeconds += render.getRenderSeconds();
+                System.out.printf("%-32s %8.1f ms  %7.1fx real time%n", r.getName(), render.getRenderSeconds() * 1000, render.getRealTimeFactor());
+            } else {
+                failed++;
+                System.out.printf("%-32s FAILED: %s%n", r.getName(), r.getError());
+            }
+        }
+        double wall = elapsed / 1e9;
+        System.out.printf("%d patches (%d failed) on %d threads in %.2f s wall, %.2f s CPU render time%n",
+                results.size(), failed, threads, wall, renderSeconds);
+        System.out.printf("%.1f s of audio, %.1fx real time overall, summed render time is %.2fx wall time%n",
+                audioSeconds, audioSeconds / wall, renderSeconds / wall);
+    }
+}
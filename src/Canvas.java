@@ -1,11 +1,38 @@
 import javax.swing.*;
 import java.awt.*;
-import org.mariuszgromada.math.mxparser.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
 
+// Preview of one operator's function over four periods. The expression is compiled and
+// sampled on a background thread, so a slow one never blocks the EDT; until the new
+// samples are in, the last good preview stays up. The grid and waveform are rendered
+// once into an image and repaints just draw that image; it's only redrawn when the
+// preview, size or colors change.
 public class Canvas extends JPanel {
+    // Previews are compiled and sampled here, never on the EDT. Cancelling can't interrupt
+    // a single slow mXparser evaluation, so a stale job may keep its thread for a while;
+    // new jobs get a thread of their own instead of queueing behind it.
+    private static final ExecutorService PREVIEW_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "FMSynth preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private int panelHeight;
     private int panelWidth;
-    private Function function;
+    // Last good preview samples, only swapped on the EDT
+    private double[] previewValues;
+    // Bumped on every edit; a job with an older number stops early and its result is dropped
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile int shownGeneration = 0;
+    private Future<?> pendingPreview;
+    private String functionText;
+    private String periodText;
     private double period;
     private double fPeriod;
     private double freq = 440.0;
@@ -18,14 +45,31 @@ public class Canvas extends JPanel {
     private Color gridColor = new Color(50, 52, 58);
     private Color axisColor = new Color(70, 72, 78);
     private Color waveColor = new Color(100, 180, 255);
+    private Color glowColor = new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), 60);
+
+    private static final BasicStroke GRID_STROKE = new BasicStroke(0.5f);
+    private static final BasicStroke AXIS_STROKE = new BasicStroke(1.0f);
+    private static final BasicStroke GLOW_STROKE = new BasicStroke(3.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final BasicStroke WAVE_STROKE = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+    // Rendered preview and what it was rendered for
+    private BufferedImage cache;
+    private double[] cachedPreview;
+    private int cachedWidth;
+    private int cachedHeight;
+    private double cachedScale;
+    private Insets cachedInsets;
+    private Color cachedBackground;
+    private int[] xPoints = new int[0];
+    private int[] yPoints = new int[0];
 
     public Canvas(String type) {
-        function = new Function("s(t) = sin(t)");
         period = 2 * Math.PI;
         fPeriod = period * 4;
         type_ = type;
         audioSamples = null;
         setBackground(bgColor);
+        setFunction("sin(t)", "2*pi");
     }
 
     public String getType() {
@@ -33,36 +77,144 @@ public class Canvas extends JPanel {
     }
 
     public void changeParam(Synthesis synth, String newPeriod, double newFreq) {
-        Argument sub = new Argument("a = " + newPeriod);
-        period = sub.getArgumentValue();
+        period = ExpressionCache.shared().constant(newPeriod);
         freq = newFreq;
         fPeriod = freq / 50.0;
         synth_ = synth;
-        function = null;
+        cancelPreview();
+        previewValues = null;
+        functionText = null;
+        cache = null;
         repaint();
     }
 
     public void changeParam(short[] s, String newPeriod, double newFreq) {
         audioSamples = s;
-        Argument sub = new Argument("a = " + newPeriod);
-        period = sub.getArgumentValue();
+        period = ExpressionCache.shared().constant(newPeriod);
         freq = newFreq;
         fPeriod = freq / 50.0;
+        cache = null;
         repaint();
     }
 
+    // Starts computing the new preview in the background and returns right away.
+    // Unchanged text keeps the current preview, so refreshing every canvas is cheap.
+    // Output canvases draw the audio samples, they don't need a preview.
     public void setFunction(String func, String per) {
-        function = new Function("f(t) = " + func);
-        Argument p = new Argument("p = " + per);
-        period = p.getArgumentValue();
-        fPeriod = period * 4;
-        repaint();
+        if (func.equals(functionText) && per.equals(periodText)) return;
+        functionText = func;
+        periodText = per;
+        if (type_.equals("Output")) return;
+
+        int gen = cancelPreview();
+        int samples = previewSamples();
+        pendingPreview = PREVIEW_EXECUTOR.submit(() -> {
+            double[] values = samplePreview(func, per, samples, gen);
+            if (values == null) return;
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() != gen) return;
+                previewValues = values;
+                shownGeneration = gen;
+                repaint();
+            });
+        });
+    }
+
+    // True while the latest edit's preview is still being computed
+    public boolean isPreviewPending() {
+        return shownGeneration != generation.get();
+    }
+
+    // Makes any running job stale and returns the new generation
+    private int cancelPreview() {
+        int gen = generation.incrementAndGet();
+        if (pendingPreview != null) {
+            pendingPreview.cancel(true);
+            pendingPreview = null;
+        }
+        return gen;
+    }
+
+    private int previewSamples() {
+        return type_.equals("Output") ? 800 : 300;
+    }
+
+    // Runs on the preview executor. Returns null if a newer edit came in meanwhile or the
+    // expression blew up, either way the last good preview stays.
+    private double[] samplePreview(String func, String per, int samples, int gen) {
+        try {
+            DoubleUnaryOperator f = ExpressionCache.shared().compile(func);
+            double span = ExpressionCache.shared().constant(per) * 4;
+
+            double[] values = new double[samples];
+            for (int i = 0; i < samples; i++) {
+                if (generation.get() != gen || Thread.currentThread().isInterrupted()) return null;
+                double value = f.applyAsDouble((double)i * span / samples);
+                values[i] = Double.isFinite(value) ? value : 0;
+            }
+            return values;
+        } catch (RuntimeException e) {
+            return null;
+        }
     }
 
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+
+        // Render at the device scale so HiDPI screens stay sharp
+        AffineTransform transform = g2d.getTransform();
+        double scale = Math.max(1, Math.max(transform.getScaleX(), transform.getScaleY()));
+
+        if (!isCacheValid(width, height, scale)) {
+            renderCache(width, height, scale);
+        }
+        g2d.drawImage(cache, 0, 0, width, height, null);
+    }
+
+    private boolean isCacheValid(int width, int height, double scale) {
+        // The Output/synth modes draw data that can change under the same key
+        if (cache == null || functionText == null) return false;
+        return width == cachedWidth && height == cachedHeight && scale == cachedScale
+                && previewValues == cachedPreview
+                && getInsets().equals(cachedInsets) && getBackground().equals(cachedBackground);
+    }
+
+    private void renderCache(int width, int height, double scale) {
+        int imageWidth = (int) Math.ceil(width * scale);
+        int imageHeight = (int) Math.ceil(height * scale);
+        if (cache == null || cache.getWidth() != imageWidth || cache.getHeight() != imageHeight) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            cache = gc != null
+                    ? gc.createCompatibleImage(imageWidth, imageHeight, Transparency.TRANSLUCENT)
+                    : new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D g2d = cache.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, imageWidth, imageHeight);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.scale(scale, scale);
+            g2d.setClip(0, 0, width, height);
+            super.paintComponent(g2d);
+            renderPreview(g2d);
+        } finally {
+            g2d.dispose();
+        }
+
+        cachedPreview = previewValues;
+        cachedWidth = width;
+        cachedHeight = height;
+        cachedScale = scale;
+        cachedInsets = getInsets();
+        cachedBackground = getBackground();
+    }
+
+    private void renderPreview(Graphics2D g2d) {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
 
@@ -78,7 +230,7 @@ public class Canvas extends JPanel {
 
         // Draw subtle grid
         g2d.setColor(gridColor);
-        g2d.setStroke(new BasicStroke(0.5f));
+        g2d.setStroke(GRID_STROKE);
 
         // Vertical lines
         for (int i = 0; i <= 8; i++) {
@@ -94,19 +246,19 @@ public class Canvas extends JPanel {
 
         // Draw axes
         g2d.setColor(axisColor);
-        g2d.setStroke(new BasicStroke(1.0f));
+        g2d.setStroke(AXIS_STROKE);
         g2d.drawLine(x0, centerY, x0 + panelWidth, centerY);  // X axis
         g2d.drawLine(x0, y0, x0, y0 + panelHeight);           // Y axis
 
-        // Draw waveform
-        g2d.setColor(waveColor);
-        g2d.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-
-        int samples = type_.equals("Output") ? 800 : 300;
+        // Draw waveform, nothing yet while the first preview is being computed
+        if (audioSamples == null && previewValues == null && synth_ == null) return;
+        int samples = previewSamples();
         double yScale = (panelHeight / 2.0 - 5);
 
-        int[] xPoints = new int[samples];
-        int[] yPoints = new int[samples];
+        if (xPoints.length < samples) {
+            xPoints = new int[samples];
+            yPoints = new int[samples];
+        }
 
         for (int i = 0; i < samples; i++) {
             xPoints[i] = x0 + (int)((double)i * panelWidth / samples);
@@ -114,10 +266,8 @@ public class Canvas extends JPanel {
             double value = 0;
             if (type_.equals("Output") && audioSamples != null && i < audioSamples.length) {
                 value = audioSamples[i] / 32768.0;
-            } else if (function != null) {
-                double t = (double)i * fPeriod / samples;
-                value = function.calculate(t);
-                if (!Double.isFinite(value)) value = 0;
+            } else if (previewValues != null) {
+                value = i < previewValues.length ? previewValues[i] : 0;
             } else if (synth_ != null) {
                 value = synth_.eval((double)i * fPeriod / samples, type_);
             }
@@ -126,12 +276,12 @@ public class Canvas extends JPanel {
         }
 
         // Draw with slight glow
-        g2d.setColor(new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), 60));
-        g2d.setStroke(new BasicStroke(3.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.setColor(glowColor);
+        g2d.setStroke(GLOW_STROKE);
         g2d.drawPolyline(xPoints, yPoints, samples);
 
         g2d.setColor(waveColor);
-        g2d.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.setStroke(WAVE_STROKE);
         g2d.drawPolyline(xPoints, yPoints, samples);
     }
 }
\ No newline at end of file
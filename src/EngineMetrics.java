@@ -0,0 +1,247 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Engine counters published over JMX. Every field has exactly one writer: the audio
+// thread for render statistics, the output thread for the ring and the device, and
+// the spectrum analyzer's thread for its own cost;
+// writers do plain volatile stores and never lock or allocate. Readers (JMX, UI)
+// compute means and percentiles from the snapshot when asked.
+public class EngineMetrics implements EngineMetricsMBean {
+    // Log-linear histogram: 4 buckets per power of two, from ~1 us up to ~17 s
+    private static final int BUCKETS = 100;
+    private static int instances = 0;
+
+    private final int sampleRate;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile long blockCount = 0;
+    private volatile long renderNanosTotal = 0;
+    private volatile long framesTotal = 0;
+    private volatile long renderNanosMin = Long.MAX_VALUE;
+    private volatile long renderNanosMax = 0;
+    private volatile double dspLoad = 0;
+    private volatile long underruns = 0;
+    private volatile int activeOperators = 0;
+    private volatile int activeVoices = 0;
+    private volatile long nonFinite = 0;
+    private volatile long patchSwaps = 0;
+    private volatile boolean resetRequested = false;
+
+    // Output thread
+    private volatile int ringFill = 0;
+    private volatile int ringLowWatermark = Integer.MAX_VALUE;
+    private volatile int ringHighWatermark = 0;
+    private volatile long ringEmpty = 0;
+    private volatile boolean outputResetRequested = false;
+
+    // Spectrum analyzer thread
+    private volatile long analysisCount = 0;
+    private volatile long analysisNanosTotal = 0;
+    private volatile long analysisNanosMax = 0;
+    private volatile long analysisSamplesTotal = 0;
+    private volatile boolean analysisResetRequested = false;
+
+    public EngineMetrics(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    // Registers under FMSynth:type=Engine (with a number if there's more than one engine)
+    public void register() {
+        try {
+            int n;
+            synchronized (EngineMetrics.class) {
+                n = instances++;
+            }
+            String name = "FMSynth:type=Engine" + (n == 0 ? "" : ",instance=" + n);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ========== AUDIO THREAD ==========
+
+    public void recordBlock(long renderNanos, int frames, int voices, int operators) {
+        if (resetRequested) {
+            clear();
+        }
+        blockCount++;
+        renderNanosTotal += renderNanos;
+        framesTotal += frames;
+        if (renderNanos < renderNanosMin) renderNanosMin = renderNanos;
+        if (renderNanos > renderNanosMax) renderNanosMax = renderNanos;
+        int bucket = bucketFor(renderNanos);
+        histogram.lazySet(bucket, histogram.get(bucket) + 1);
+
+        double blockNanos = frames * 1e9 / sampleRate;
+        dspLoad = 100.0 * renderNanos / blockNanos;
+        activeVoices = voices;
+        activeOperators = operators;
+    }
+
+    // ========== OUTPUT THREAD ==========
+
+    // Ring fill level in frames, sampled before every read
+    public void recordRingFill(int frames) {
+        if (outputResetRequested) {
+            clearOutput();
+        }
+        ringFill = frames;
+        if (frames < ringLowWatermark) ringLowWatermark = frames;
+        if (frames > ringHighWatermark) ringHighWatermark = frames;
+    }
+
+    // The renderer fell behind; the line may still have enough queued to cover it
+    public void recordRingEmpty() {
+        ringEmpty++;
+    }
+
+    // The device itself ran dry
+    public void recordUnderrun() {
+        underruns++;
+    }
+
+    private void clearOutput() {
+        outputResetRequested = false;
+        ringLowWatermark = Integer.MAX_VALUE;
+        ringHighWatermark = 0;
+        ringEmpty = 0;
+        underruns = 0;
+    }
+
+    public void recordNonFinite(int count) {
+        if (count > 0) nonFinite += count;
+    }
+
+    public void recordPatchSwap() {
+        patchSwaps++;
+    }
+
+    private void clear() {
+        resetRequested = false;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.lazySet(i, 0);
+        }
+        blockCount = 0;
+        renderNanosTotal = 0;
+        framesTotal = 0;
+        renderNanosMin = Long.MAX_VALUE;
+        renderNanosMax = 0;
+        nonFinite = 0;
+        patchSwaps = 0;
+    }
+
+    // ========== SPECTRUM ANALYZER THREAD ==========
+
+    // Time for one spectrum frame, which covered this many new samples
+    public void recordAnalysis(long nanos, int samples) {
+        if (analysisResetRequested) {
+            analysisResetRequested = false;
+            analysisCount = 0;
+            analysisNanosTotal = 0;
+            analysisNanosMax = 0;
+            analysisSamplesTotal = 0;
+        }
+        analysisCount++;
+        analysisNanosTotal += nanos;
+        analysisSamplesTotal += samples;
+        if (nanos > analysisNanosMax) analysisNanosMax = nanos;
+    }
+
+    private static int bucketFor(long nanos) {
+        if (nanos < 1024) return 0;
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) ((nanos >>> (log - 2)) & 3);
+        return Math.min(BUCKETS - 1, (log - 10) * 4 + sub + 1);
+    }
+
+    private static long bucketUpperBound(int bucket) {
+        if (bucket == 0) return 1024;
+        int log = (bucket - 1) / 4 + 10;
+        int sub = (bucket - 1) % 4;
+        return (long) (5 + sub) << (log - 2);
+    }
+
+    // ========== READERS ==========
+
+    public long getBlockCount() { return blockCount; }
+
+    public double getRenderTimeMinMicros() {
+        long min = renderNanosMin;
+        return min == Long.MAX_VALUE ? 0 : min / 1000.0;
+    }
+
+    public double getRenderTimeMeanMicros() {
+        long count = blockCount;
+        return count == 0 ? 0 : renderNanosTotal / 1000.0 / count;
+    }
+
+    // Upper edge of the histogram bucket holding the 99th percentile
+    public double getRenderTimeP99Micros() {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long threshold = (long) Math.ceil(total * 0.99);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                return Math.min(bucketUpperBound(i), renderNanosMax) / 1000.0;
+            }
+        }
+        return renderNanosMax / 1000.0;
+    }
+
+    public double getRenderTimeMaxMicros() { return renderNanosMax / 1000.0; }
+
+    public double getDspLoadPercent() { return dspLoad; }
+
+    public double getAverageDspLoadPercent() {
+        long frames = framesTotal;
+        if (frames == 0) return 0;
+        return 100.0 * renderNanosTotal / (frames * 1e9 / sampleRate);
+    }
+
+    public long getUnderrunCount() { return underruns; }
+    public int getRingFillFrames() { return ringFill; }
+
+    public int getRingLowWatermarkFrames() {
+        int low = ringLowWatermark;
+        return low == Integer.MAX_VALUE ? 0 : low;
+    }
+
+    public int getRingHighWatermarkFrames() { return ringHighWatermark; }
+    public long getRingEmptyCount() { return ringEmpty; }
+    public int getActiveOperatorCount() { return activeOperators; }
+    public int getActiveVoiceCount() { return activeVoices; }
+    public long getNonFiniteSubstitutionCount() { return nonFinite; }
+    public long getPatchSwapCount() { return patchSwaps; }
+
+    public long getAnalyzerFrameCount() { return analysisCount; }
+
+    public double getAnalyzerMeanMicros() {
+        long count = analysisCount;
+        return count == 0 ? 0 : analysisNanosTotal / 1000.0 / count;
+    }
+
+    public double getAnalyzerMaxMicros() { return analysisNanosMax / 1000.0; }
+
+    // Analysis time as a percentage of the audio time it covered, i.e. of one core
+    public double getAnalyzerLoadPercent() {
+        long samples = analysisSamplesTotal;
+        if (samples == 0) return 0;
+        return 100.0 * analysisNanosTotal / (samples * 1e9 / sampleRate);
+    }
+
+    // Applied by each writer thread on its next record, so every field keeps a single writer
+    public void resetStatistics() {
+        resetRequested = true;
+        outputResetRequested = true;
+        analysisResetRequested = true;
+    }
+}
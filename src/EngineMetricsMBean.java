@@ -0,0 +1,35 @@
+// Management interface for EngineMetrics, shown in JConsole/VisualVM under "FMSynth".
+public interface EngineMetricsMBean {
+    long getBlockCount();
+
+    // Render time per block
+    double getRenderTimeMinMicros();
+    double getRenderTimeMeanMicros();
+    double getRenderTimeP99Micros();
+    double getRenderTimeMaxMicros();
+
+    // Render time as a percentage of the block's playback time
+    double getDspLoadPercent();
+    double getAverageDspLoadPercent();
+
+    long getUnderrunCount();
+
+    // Rendered frames waiting between the render and output threads
+    int getRingFillFrames();
+    int getRingLowWatermarkFrames();
+    int getRingHighWatermarkFrames();
+    long getRingEmptyCount();
+
+    int getActiveOperatorCount();
+    int getActiveVoiceCount();
+    long getNonFiniteSubstitutionCount();
+    long getPatchSwapCount();
+
+    // Spectrum analyzer, which runs on its own thread
+    long getAnalyzerFrameCount();
+    double getAnalyzerMeanMicros();
+    double getAnalyzerMaxMicros();
+    double getAnalyzerLoadPercent();
+
+    void resetStatistics();
+}
@@ -0,0 +1,151 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Timestamped note and parameter events from any thread (EDT, MIDI, offline driver) to
+// the audio thread. Lock-free for any number of producers and one consumer: a producer
+// claims a slot with one CAS on the tail and publishes it by advancing the slot's
+// sequence number, the consumer never writes anything a producer waits on. Slots are
+// preallocated primitive arrays, so posting never allocates or blocks; when the queue
+// is full post returns false.
+//
+// The consumer moves posted events into a pending list sorted by frame (posting order
+// for equal frames), since producers on different threads can post out of order.
+public class EventQueue {
+    // Event types
+    public static final int NOTE_ON = 1;        // note, value = frequency in Hz
+    public static final int NOTE_OFF = 2;       // note
+    public static final int ALL_NOTES_OFF = 3;  // release every voice
+    public static final int RESET = 4;          // silence every voice immediately
+    public static final int POLYPHONY = 5;      // value = voice count
+
+    private final int capacity;
+    private final int mask;
+
+    // Producer side: slot i is free for position p when sequence[i] == p,
+    // and holds the event of position p once sequence[i] == p + 1
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLongArray sequence;
+    private final int[] types;
+    private final long[] frames;
+    private final int[] notes;
+    private final double[] values;
+
+    // Consumer side, audio thread only
+    private long head = 0;
+    private final int[] pendingTypes;
+    private final long[] pendingFrames;
+    private final int[] pendingNotes;
+    private final double[] pendingValues;
+    private int first = 0;
+    private int count = 0;
+
+    // Capacity is rounded up to a power of two
+    public EventQueue(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = this.capacity - 1;
+        sequence = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequence.set(i, i);
+        }
+        types = new int[this.capacity];
+        frames = new long[this.capacity];
+        notes = new int[this.capacity];
+        values = new double[this.capacity];
+        pendingTypes = new int[this.capacity];
+        pendingFrames = new long[this.capacity];
+        pendingNotes = new int[this.capacity];
+        pendingValues = new double[this.capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // ========== PRODUCERS (any thread) ==========
+
+    // Returns false if the queue is full and the event was dropped
+    public boolean post(int type, long frame, int note, double value) {
+        long pos = tail.get();
+        int slot;
+        while (true) {
+            slot = (int) (pos & mask);
+            long diff = sequence.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+                pos = tail.get();
+            } else if (diff < 0) {
+                // Still holds an event from one lap ago
+                return false;
+            } else {
+                // Another producer took this position
+                pos = tail.get();
+            }
+        }
+        types[slot] = type;
+        frames[slot] = frame;
+        notes[slot] = note;
+        values[slot] = value;
+        // Release: the fields above are visible before the consumer sees the slot as full
+        sequence.lazySet(slot, pos + 1);
+        return true;
+    }
+
+    // ========== CONSUMER (audio thread) ==========
+
+    // Moves everything posted so far into the pending list
+    public void drain() {
+        while (count < capacity) {
+            int slot = (int) (head & mask);
+            if (sequence.get(slot) != head + 1) return;
+            insert(types[slot], frames[slot], notes[slot], values[slot]);
+            // Hands the slot back to producers for the next lap
+            sequence.lazySet(slot, head + capacity);
+            head++;
+        }
+    }
+
+    // Usually appends; an event older than the newest pending one is sorted in
+    private void insert(int type, long frame, int note, double value) {
+        if (first + count == capacity) {
+            // Out of room at the end, move the pending events to the front
+            System.arraycopy(pendingTypes, first, pendingTypes, 0, count);
+            System.arraycopy(pendingFrames, first, pendingFrames, 0, count);
+            System.arraycopy(pendingNotes, first, pendingNotes, 0, count);
+            System.arraycopy(pendingValues, first, pendingValues, 0, count);
+            first = 0;
+        }
+        int end = first + count;
+        int i = end;
+        while (i > first && pendingFrames[i - 1] > frame) {
+            i--;
+        }
+        if (i < end) {
+            System.arraycopy(pendingTypes, i, pendingTypes, i + 1, end - i);
+            System.arraycopy(pendingFrames, i, pendingFrames, i + 1, end - i);
+            System.arraycopy(pendingNotes, i, pendingNotes, i + 1, end - i);
+            System.arraycopy(pendingValues, i, pendingValues, i + 1, end - i);
+        }
+        pendingTypes[i] = type;
+        pendingFrames[i] = frame;
+        pendingNotes[i] = note;
+        pendingValues[i] = value;
+        count++;
+    }
+
+    // Frame of the earliest pending event, Long.MAX_VALUE when there is none
+    public long nextFrame() {
+        return count > 0 ? pendingFrames[first] : Long.MAX_VALUE;
+    }
+
+    // Fields of the earliest pending event
+    public int nextType() { return pendingTypes[first]; }
+    public int nextNote() { return pendingNotes[first]; }
+    public double nextValue() { return pendingValues[first]; }
+
+    // Drops the earliest pending event
+    public void remove() {
+        first++;
+        count--;
+        if (count == 0) first = 0;
+    }
+}
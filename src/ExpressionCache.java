@@ -0,0 +1,142 @@
+import javax.management.*;
+import org.mariuszgromada.math.mxparser.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+
+// Process-wide cache of compiled operator functions and evaluated constants (periods),
+// keyed by the expression text with surrounding whitespace trimmed and inner runs of
+// whitespace collapsed. Identical operators and repeated refreshes compile once.
+//
+// Lookups are lock-free and safe from any thread; cached evaluators are shareable too,
+// mXparser fallbacks keep one parser per thread and a Patch takes its own (see
+// ExpressionCompiler.ownCopy). The least recently used entries are evicted once the
+// cache is over capacity.
+public class ExpressionCache implements ExpressionCacheMBean {
+    private static final ExpressionCache SHARED = new ExpressionCache(512);
+
+    private static final class Entry {
+        final Object value;
+        volatile long lastUsed;
+
+        Entry(Object v, long stamp) {
+            value = v;
+            lastUsed = stamp;
+        }
+    }
+
+    private final int capacity;
+    // Evaluators under "f:" + text, constants under "c:" + text
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpressionCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public static ExpressionCache shared() {
+        return SHARED;
+    }
+
+    // Registers the shared cache under FMSynth:type=ExpressionCache, once per process
+    public static synchronized void registerShared() {
+        try {
+            ObjectName name = new ObjectName("FMSynth:type=ExpressionCache");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(SHARED, name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Compiled f(t), see ExpressionCompiler.compile
+    public DoubleUnaryOperator compile(String expression) {
+        String text = normalize(expression);
+        Object value = lookup("f:" + text);
+        if (value == null) {
+            value = store("f:" + text, ExpressionCompiler.compile(text));
+        }
+        return (DoubleUnaryOperator) value;
+    }
+
+    // Value of a constant expression such as a period, NaN if it doesn't evaluate
+    public double constant(String expression) {
+        String text = normalize(expression);
+        Object value = lookup("c:" + text);
+        if (value == null) {
+            Argument argument = new Argument("p = " + text);
+            value = store("c:" + text, argument.getArgumentValue());
+        }
+        return (Double) value;
+    }
+
+    static String normalize(String expression) {
+        return expression == null ? "" : expression.trim().replaceAll("\\s+", " ");
+    }
+
+    private Object lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastUsed = clock.incrementAndGet();
+        return entry.value;
+    }
+
+    // Two threads missing on the same key both compile, the first one stored wins
+    private Object store(String key, Object value) {
+        Entry entry = entries.putIfAbsent(key, new Entry(value, clock.incrementAndGet()));
+        if (entry != null) {
+            return entry.value;
+        }
+        if (entries.size() > capacity) {
+            evict();
+        }
+        return value;
+    }
+
+    // Drops the least recently used entries until the cache is back under capacity.
+    // Only runs on a miss that overflows, and scans at most capacity entries.
+    private synchronized void evict() {
+        while (entries.size() > capacity) {
+            String oldest = null;
+            long oldestStamp = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                long stamp = e.getValue().lastUsed;
+                if (stamp < oldestStamp) {
+                    oldestStamp = stamp;
+                    oldest = e.getKey();
+                }
+            }
+            if (oldest == null || entries.remove(oldest) == null) return;
+            evictions.increment();
+        }
+    }
+
+    // Metrics
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public int getSize() { return entries.size(); }
+    public int getCapacity() { return capacity; }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,11 @@
+// Management interface for ExpressionCache, shown under "FMSynth" next to the engine.
+public interface ExpressionCacheMBean {
+    long getHitCount();
+    long getMissCount();
+    long getEvictionCount();
+    double getHitRatio();
+    int getSize();
+    int getCapacity();
+
+    void clear();
+}
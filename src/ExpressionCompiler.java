@@ -0,0 +1,422 @@
+import org.mariuszgromada.math.mxparser.*;
+import java.util.ArrayList;
+import java.util.function.DoubleUnaryOperator;
+
+// Compiles an operator's f(t) expression into a tree of small evaluator nodes
+// so the audio loop doesn't go through mXparser's interpreter on every sample.
+// Only plain arithmetic, t, pi, e and the common math functions are handled here;
+// anything else falls back to an mXparser Function.
+public class ExpressionCompiler {
+
+    public static DoubleUnaryOperator compile(String expression) {
+        DoubleUnaryOperator compiled = tryCompile(expression);
+        if (compiled != null) {
+            return compiled;
+        }
+        return interpret(expression);
+    }
+
+    // Returns null if the expression uses something the compiler doesn't support
+    public static DoubleUnaryOperator tryCompile(String expression) {
+        if (expression == null) return null;
+        try {
+            Parser parser = new Parser(expression);
+            Node root = parser.parseExpression();
+            if (!parser.atEnd()) return null;
+            return root;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public static DoubleUnaryOperator interpret(String expression) {
+        return new Interpreted(expression);
+    }
+
+    // mXparser allocates on every call, so interpreted operators are never allocation-free
+    public static boolean isInterpreted(DoubleUnaryOperator func) {
+        return func instanceof Interpreted || func instanceof Owned;
+    }
+
+    // Copy of func for a single thread, e.g. one Patch's audio thread. An interpreted
+    // function gets its own mXparser Function, built and parsed right here instead of on
+    // that thread's first call; compiled evaluators are stateless and returned as they are.
+    public static DoubleUnaryOperator ownCopy(DoubleUnaryOperator func) {
+        if (func instanceof Interpreted) {
+            return new Owned(((Interpreted) func).expression);
+        }
+        return func;
+    }
+
+    // mXparser's Function keeps evaluation state and isn't safe to share between threads,
+    // so each thread gets its own copy; that makes cached instances shareable
+    private static final class Interpreted implements DoubleUnaryOperator {
+        private final String expression;
+        private final ThreadLocal<Function> func;
+
+        Interpreted(String expression) {
+            this.expression = expression;
+            func = ThreadLocal.withInitial(() -> new Function("f(t) = " + expression));
+        }
+
+        public double applyAsDouble(double t) {
+            return func.get().calculate(t);
+        }
+    }
+
+    // One mXparser Function for one thread, ready to evaluate
+    private static final class Owned implements DoubleUnaryOperator {
+        private final Function func;
+
+        Owned(String expression) {
+            func = new Function("f(t) = " + expression);
+            // mXparser checks the syntax and tokenizes on the first calculate
+            func.calculate(0);
+        }
+
+        public double applyAsDouble(double t) {
+            return func.calculate(t);
+        }
+    }
+
+    // ========== PARSER ==========
+
+    private static class Parser {
+        private final String src;
+        private int pos = 0;
+
+        Parser(String s) {
+            src = s;
+        }
+
+        boolean atEnd() {
+            skipSpaces();
+            return pos >= src.length();
+        }
+
+        private void skipSpaces() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (pos < src.length() && src.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private char peek() {
+            skipSpaces();
+            return pos < src.length() ? src.charAt(pos) : '\0';
+        }
+
+        private static UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException();
+        }
+
+        Node parseExpression() {
+            Node left = parseTerm();
+            while (true) {
+                if (accept('+')) {
+                    left = Binary.of(Binary.ADD, left, parseTerm());
+                } else if (accept('-')) {
+                    left = Binary.of(Binary.SUB, left, parseTerm());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseTerm() {
+            Node left = parseUnary();
+            while (true) {
+                if (accept('*')) {
+                    left = Binary.of(Binary.MUL, left, parseUnary());
+                } else if (accept('/')) {
+                    left = Binary.of(Binary.DIV, left, parseUnary());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseUnary() {
+            if (accept('+')) {
+                return parseUnary();
+            }
+            if (accept('-')) {
+                // mXparser reads "-2^2" as (-2)^2 but "-t^2" as -(t^2), leave that quirk to it
+                int save = pos;
+                skipSpaces();
+                if (pos < src.length() && isNumberStart(src.charAt(pos))) {
+                    parseNumber();
+                    if (peek() == '^') throw unsupported();
+                }
+                pos = save;
+                return Unary.of(Unary.NEG, parseUnary());
+            }
+            return parsePower();
+        }
+
+        private Node parsePower() {
+            Node base = parsePrimary();
+            if (accept('^')) {
+                // Right associative, exponent may carry its own sign (2^-1)
+                return Binary.of(Binary.POW, base, parseUnary());
+            }
+            return base;
+        }
+
+        private Node parsePrimary() {
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                Node inner = parseExpression();
+                if (!accept(')')) throw unsupported();
+                return inner;
+            }
+            if (isNumberStart(c)) {
+                return new Const(parseNumber());
+            }
+            if (Character.isLetter(c)) {
+                String name = parseIdentifier();
+                if (peek() == '(') {
+                    pos++;
+                    ArrayList<Node> args = new ArrayList<>();
+                    if (!accept(')')) {
+                        do {
+                            args.add(parseExpression());
+                        } while (accept(','));
+                        if (!accept(')')) throw unsupported();
+                    }
+                    return call(name, args);
+                }
+                switch (name) {
+                    case "t": return new Var();
+                    case "pi": return new Const(Math.PI);
+                    case "e": return new Const(Math.E);
+                    default: throw unsupported();
+                }
+            }
+            throw unsupported();
+        }
+
+        private static boolean isNumberStart(char c) {
+            return Character.isDigit(c) || c == '.';
+        }
+
+        private double parseNumber() {
+            int start = pos;
+            while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) pos++;
+            // Implied multiplication ("2t", "2pi") and scientific notation are left to mXparser
+            if (pos < src.length() && (Character.isLetter(src.charAt(pos)) || src.charAt(pos) == '_')) {
+                throw unsupported();
+            }
+            try {
+                return Double.parseDouble(src.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw unsupported();
+            }
+        }
+
+        private String parseIdentifier() {
+            int start = pos;
+            while (pos < src.length() && (Character.isLetterOrDigit(src.charAt(pos)) || src.charAt(pos) == '_')) pos++;
+            return src.substring(start, pos);
+        }
+
+        private static Node call(String name, ArrayList<Node> args) {
+            if (args.size() == 1) {
+                int code = Unary.code(name);
+                if (code < 0) throw unsupported();
+                return Unary.of(code, args.get(0));
+            }
+            if (args.size() == 2 && name.equals("log")) {
+                // log(base, x)
+                return Binary.of(Binary.DIV, Unary.of(Unary.LN, args.get(1)), Unary.of(Unary.LN, args.get(0)));
+            }
+            if (args.size() >= 2 && (name.equals("min") || name.equals("max"))) {
+                int op = name.equals("min") ? Binary.MIN : Binary.MAX;
+                Node result = args.get(0);
+                for (int i = 1; i < args.size(); i++) {
+                    result = Binary.of(op, result, args.get(i));
+                }
+                return result;
+            }
+            throw unsupported();
+        }
+    }
+
+    // ========== EVALUATOR NODES ==========
+
+    private static abstract class Node implements DoubleUnaryOperator {
+        boolean isConstant() {
+            return false;
+        }
+    }
+
+    private static final class Const extends Node {
+        private final double value;
+
+        Const(double v) {
+            value = v;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        public double applyAsDouble(double t) {
+            return value;
+        }
+    }
+
+    private static final class Var extends Node {
+        public double applyAsDouble(double t) {
+            return t;
+        }
+    }
+
+    // Scaled input (c * t), the most common shape for operator functions
+    private static final class ScaledVar extends Node {
+        private final double scale;
+
+        ScaledVar(double s) {
+            scale = s;
+        }
+
+        public double applyAsDouble(double t) {
+            return scale * t;
+        }
+    }
+
+    private static final class Unary extends Node {
+        static final int NEG = 0, SIN = 1, COS = 2, TAN = 3, ASIN = 4, ACOS = 5, ATAN = 6,
+                SINH = 7, COSH = 8, TANH = 9, EXP = 10, LN = 11, LOG2 = 12, LOG10 = 13,
+                SQRT = 14, ABS = 15, FLOOR = 16, CEIL = 17, SGN = 18;
+
+        private final int op;
+        private final Node arg;
+
+        private Unary(int o, Node a) {
+            op = o;
+            arg = a;
+        }
+
+        static int code(String name) {
+            switch (name) {
+                case "sin": return SIN;
+                case "cos": return COS;
+                case "tan": case "tg": return TAN;
+                case "asin": case "arcsin": return ASIN;
+                case "acos": case "arccos": return ACOS;
+                case "atan": case "arctan": case "arctg": return ATAN;
+                case "sinh": return SINH;
+                case "cosh": return COSH;
+                case "tanh": case "tgh": return TANH;
+                case "exp": return EXP;
+                case "ln": return LN;
+                case "log2": return LOG2;
+                case "log10": case "lg": return LOG10;
+                case "sqrt": return SQRT;
+                case "abs": return ABS;
+                case "floor": return FLOOR;
+                case "ceil": return CEIL;
+                case "sgn": return SGN;
+                default: return -1;
+            }
+        }
+
+        static Node of(int op, Node arg) {
+            Node node = new Unary(op, arg);
+            if (arg.isConstant()) {
+                return new Const(node.applyAsDouble(0));
+            }
+            return node;
+        }
+
+        public double applyAsDouble(double t) {
+            double x = arg.applyAsDouble(t);
+            switch (op) {
+                case NEG: return -x;
+                case SIN: return Math.sin(x);
+                case COS: return Math.cos(x);
+                case TAN: return Math.abs(Math.cos(x)) < 1e-15 ? Double.NaN : Math.tan(x); // like mXparser at odd pi/2
+                case ASIN: return Math.asin(x);
+                case ACOS: return Math.acos(x);
+                case ATAN: return Math.atan(x);
+                case SINH: return Math.sinh(x);
+                case COSH: return Math.cosh(x);
+                case TANH: return Math.tanh(x);
+                case EXP: return Math.exp(x);
+                case LN: return Math.log(x);
+                case LOG2: return Math.log(x) / Math.log(2);
+                case LOG10: return Math.log10(x);
+                case SQRT: return Math.sqrt(x);
+                case ABS: return Math.abs(x);
+                case FLOOR: return Math.floor(x);
+                case CEIL: return Math.ceil(x);
+                case SGN: return Math.signum(x);
+                default: return Double.NaN;
+            }
+        }
+    }
+
+    private static final class Binary extends Node {
+        static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, POW = 4, MIN = 5, MAX = 6;
+
+        private final int op;
+        private final Node left;
+        private final Node right;
+
+        private Binary(int o, Node l, Node r) {
+            op = o;
+            left = l;
+            right = r;
+        }
+
+        static Node of(int op, Node left, Node right) {
+            Node node = new Binary(op, left, right);
+            if (left.isConstant() && right.isConstant()) {
+                return new Const(node.applyAsDouble(0));
+            }
+            if (op == MUL && left.isConstant() && right instanceof Var) {
+                return new ScaledVar(left.applyAsDouble(0));
+            }
+            if (op == MUL && right.isConstant() && left instanceof Var) {
+                return new ScaledVar(right.applyAsDouble(0));
+            }
+            return node;
+        }
+
+        public double applyAsDouble(double t) {
+            double a = left.applyAsDouble(t);
+            double b = right.applyAsDouble(t);
+            switch (op) {
+                case ADD: return a + b;
+                case SUB: return a - b;
+                case MUL: return a * b;
+                case DIV: return b == 0 ? Double.NaN : a / b; // mXparser gives NaN, not infinity
+                case POW: return pow(a, b);
+                case MIN: return Math.min(a, b);
+                case MAX: return Math.max(a, b);
+                default: return Double.NaN;
+            }
+        }
+
+        // Matches mXparser for odd roots of negative numbers, e.g. (-8)^(1/3) = -2
+        private static double pow(double a, double b) {
+            if (a < 0 && b != Math.rint(b)) {
+                double inv = 1.0 / b;
+                double rounded = Math.rint(inv);
+                if (Math.abs(inv - rounded) < 1e-12 && Math.abs(rounded % 2) == 1) {
+                    return -Math.pow(-a, b);
+                }
+            }
+            return Math.pow(a, b);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// Real-input FFT of one fixed power-of-two size. All tables and work buffers are allocated
+// up front, so transforms don't allocate. The N real samples are packed into an N/2-point
+// complex FFT (even samples as real part, odd as imaginary) and separated afterwards,
+// which is about twice as fast as a complex FFT with zero imaginary parts.
+//
+// Not thread-safe, each thread needs its own instance.
+public class FFT {
+    private final int size;
+    private final int half;
+    // Twiddles for the N-point transform, e^(-2 pi i k / N) for k < N/2
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] bitReverse;
+    private final double[] re;
+    private final double[] im;
+
+    public FFT(int n) {
+        if (n < 4 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + n);
+        }
+        size = n;
+        half = n / 2;
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / n);
+            sin[k] = -Math.sin(2 * Math.PI * k / n);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        re = new double[half];
+        im = new double[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Squared magnitude of bins 0 .. N/2 of input[0 .. N), written to power[0 .. N/2]
+    public void powerSpectrum(double[] input, double[] power) {
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+        transform();
+
+        // Even/odd spectra from Z[k] and conj(Z[N/2 - k]), then X[k] = E[k] + W^k O[k]
+        power[0] = sq(re[0] + im[0]);
+        power[half] = sq(re[0] - im[0]);
+        for (int k = 1; k < half; k++) {
+            double zr = re[k], zi = im[k];
+            double cr = re[half - k], ci = -im[half - k];
+            double er = 0.5 * (zr + cr), ei = 0.5 * (zi + ci);
+            double or = 0.5 * (zi - ci), oi = -0.5 * (zr - cr);
+            double wr = cos[k], wi = sin[k];
+            double xr = er + wr * or - wi * oi;
+            double xi = ei + wr * oi + wi * or;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+
+    // In-place radix-2 decimation-in-time FFT of the N/2 complex points in re/im (already bit-reversed)
+    private void transform() {
+        for (int len = 2; len <= half; len <<= 1) {
+            int step = size / len; // twiddle stride in the N-point table
+            int halfLen = len >> 1;
+            for (int start = 0; start < half; start += len) {
+                for (int k = 0; k < halfLen; k++) {
+                    double wr = cos[k * step], wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + halfLen;
+                    double br = re[b] * wr - im[b] * wi;
+                    double bi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - br;
+                    im[b] = im[a] - bi;
+                    re[a] += br;
+                    im[a] += bi;
+                }
+            }
+        }
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+}
@@ -50,7 +50,7 @@ public class KeyboardPanel extends JPanel {
                 int midiNote = getMidiNote(whiteNoteNames[noteInOctave], octave);
                 double freq = midiToFreq(midiNote);
 
-                PianoKey whiteKey = new PianoKey(whiteName, freq, false, whiteKeyIndex);
+                PianoKey whiteKey = new PianoKey(whiteName, midiNote, freq, false, whiteKeyIndex);
                 whiteKeys.add(whiteKey);
                 add(whiteKey);
 
@@ -60,7 +60,7 @@ public class KeyboardPanel extends JPanel {
                     int blackMidi = midiNote + 1;
                     double blackFreq = midiToFreq(blackMidi);
 
-                    PianoKey blackKey = new PianoKey(blackName, blackFreq, true, whiteKeyIndex);
+                    PianoKey blackKey = new PianoKey(blackName, blackMidi, blackFreq, true, whiteKeyIndex);
                     blackKeys.add(blackKey);
                     add(blackKey);
                 }
@@ -123,18 +123,18 @@ public class KeyboardPanel extends JPanel {
         repaint();
     }
 
-    private void playNote(double freq) {
-        synth.setFrequency(freq);
-        synth.playSignal();
+    private void playNote(int midiNote, double freq) {
+        synth.noteOn(midiNote, freq);
     }
 
-    private void stopNote() {
-        synth.stopSignal();
+    private void stopNote(int midiNote) {
+        synth.noteOff(midiNote);
     }
 
     // Inner class for piano keys
     private class PianoKey extends JPanel {
         private String noteName;
+        private int midiNote;
         private double frequency;
         private boolean isBlack;
         private int whiteKeyIndex;
@@ -145,8 +145,9 @@ public class KeyboardPanel extends JPanel {
         private Color blackKeyColor = new Color(30, 30, 35);
         private Color blackKeyPressed = new Color(60, 60, 70);
 
-        public PianoKey(String name, double freq, boolean black, int whiteIdx) {
+        public PianoKey(String name, int midi, double freq, boolean black, int whiteIdx) {
             noteName = name;
+            midiNote = midi;
             frequency = freq;
             isBlack = black;
             whiteKeyIndex = whiteIdx;
@@ -156,20 +157,20 @@ public class KeyboardPanel extends JPanel {
             addMouseListener(new MouseAdapter() {
                 public void mousePressed(MouseEvent e) {
                     pressed = true;
-                    playNote(frequency);
+                    playNote(midiNote, frequency);
                     repaint();
                 }
 
                 public void mouseReleased(MouseEvent e) {
                     pressed = false;
-                    stopNote();
+                    stopNote(midiNote);
                     repaint();
                 }
 
                 public void mouseExited(MouseEvent e) {
                     if (pressed) {
                         pressed = false;
-                        stopNote();
+                        stopNote(midiNote);
                         repaint();
                     }
                 }
@@ -1,9 +1,35 @@
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Operator and matrix edits arrive as change events. They're collected and applied
+// once per event-queue pass: each changed operator is recompiled on its own, each
+// changed matrix cell is one route update and an added operator is the only one compiled.
+// The compiling happens on a thread of its own, in the order of the edits, with copies of
+// the operators, so parsing expressions and rendering wavetables never holds up the EDT.
 public class MainFrame extends JFrame {
+    // The engine has no fixed limit; this just keeps the editor usable
+    private static final int MAX_OPERATORS = 256;
+
     private ArrayList<Operator> operators;
+    private ModMatrix modMatrix = new ModMatrix();
+    private final Operator.Listener operatorListener = (op, fields) -> scheduleFlush();
+    private boolean flushScheduled = false;
+    // Matrix cells changed since the last flush, src/dst pairs
+    private int[] changedCells = new int[16];
+    private int changedCount = 0;
+    // Runs every Synthesis call that builds a patch, one at a time
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "FMSynth compile");
+        thread.setDaemon(true);
+        return thread;
+    });
     private ArrayList<OperatorPanel> operatorPanels;
     private JPanel operatorsPanel;
     private JScrollPane operatorsScroll;
@@ -12,8 +38,11 @@ public class MainFrame extends JFrame {
     private boolean isResizing = false;
     private ModMatrixPanel modMatrixPanel;
     private OscilloscopePanel oscilloscope;
-    private Timer oscilloscopeTimer;
+    private SpectrumPanel spectrum;
+    private JPanel displaysPanel;
     private KeyboardPanel keyboardPanel;
+    // Where the patch file dialogs start, the last directory used
+    private File patchDirectory = new File(".");
 
     // Colors
     private Color bgColor = new Color(38, 40, 45);
@@ -54,7 +83,7 @@ public class MainFrame extends JFrame {
         addButton.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
         addButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
         addButton.addActionListener(e -> {
-            if (operators.size() < 10) {
+            if (operators.size() < MAX_OPERATORS) {
                 addOperator();
             }
         });
@@ -88,14 +117,23 @@ public class MainFrame extends JFrame {
         rightPanel.setBorder(BorderFactory.createEmptyBorder(10, 5, 10, 10));
 
         // Mod matrix
-        modMatrixPanel = new ModMatrixPanel(this);
+        modMatrixPanel = new ModMatrixPanel(modMatrix);
+        modMatrix.addListener((matrix, src, dst) -> {
+            if (src >= 0) cellChanged(src, dst);
+            scheduleFlush();
+        });
 
-        // Oscilloscope
+        // Oscilloscope and spectrum side by side
         oscilloscope = new OscilloscopePanel();
-        oscilloscope.setPreferredSize(new Dimension(0, 180));
+        spectrum = new SpectrumPanel();
+        displaysPanel = new JPanel(new GridLayout(1, 2, 10, 0));
+        displaysPanel.setBackground(panelBgColor);
+        displaysPanel.setPreferredSize(new Dimension(0, 180));
+        displaysPanel.add(oscilloscope);
+        displaysPanel.add(spectrum);
 
         rightPanel.add(modMatrixPanel, BorderLayout.CENTER);
-        rightPanel.add(oscilloscope, BorderLayout.SOUTH);
+        rightPanel.add(displaysPanel, BorderLayout.SOUTH);
 
         // ========== TOP SPLIT (Operators | Matrix+Scope) ==========
         JSplitPane topSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, operatorsWrapper, rightPanel);
@@ -109,15 +147,12 @@ public class MainFrame extends JFrame {
         keyboardPanel = new KeyboardPanel(this, synth);
         keyboardPanel.setPreferredSize(new Dimension(0, 140));
 
-        // Add initial operators
+        // Add initial operators, each one is added to the engine's patch as well
         addOperator();
         addOperator();
         addOperator();
 
-        // Set up synthesis
-        synth.setOperators(operators);
-        modMatrixPanel.updateMatrix(operators);
-        synth.setModMatrix(modMatrixPanel.getMatrixValues());
+        setJMenuBar(createMenuBar());
 
         // Add to frame
         add(topSplit, BorderLayout.CENTER);
@@ -135,9 +170,9 @@ public class MainFrame extends JFrame {
                 int keyboardHeight = Math.max(100, Math.min(180, height / 6));
                 keyboardPanel.setPreferredSize(new Dimension(0, keyboardHeight));
 
-                // Update oscilloscope height
+                // Update oscilloscope and spectrum height
                 int scopeHeight = Math.max(120, Math.min(220, height / 5));
-                oscilloscope.setPreferredSize(new Dimension(0, scopeHeight));
+                displaysPanel.setPreferredSize(new Dimension(0, scopeHeight));
 
                 resizeOperatorPanels();
                 revalidate();
@@ -146,13 +181,9 @@ public class MainFrame extends JFrame {
             }
         });
 
-        // Oscilloscope update timer
-        oscilloscopeTimer = new Timer(40, e -> {
-            if (oscilloscope != null) {
-                oscilloscope.updateSamples(synth.getSamples());
-            }
-        });
-        oscilloscopeTimer.start();
+        // Oscilloscope repaints itself whenever the engine publishes a frame
+        oscilloscope.setTap(synth.getScopeTap());
+        spectrum.setSource(synth.getSpectrumTap(), synth.getMetrics());
 
         setVisible(true);
 
@@ -160,6 +191,184 @@ public class MainFrame extends JFrame {
         SwingUtilities.invokeLater(() -> topSplit.setDividerLocation(0.55));
     }
 
+    private JMenuBar createMenuBar() {
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(createFileMenu());
+        menuBar.add(createSoundMenu());
+        menuBar.add(createAudioMenu());
+
+        // Latency readout on the right, a few times a second
+        JLabel latency = new JLabel();
+        latency.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 10));
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(latency);
+        Timer timer = new Timer(250, e -> latency.setText(String.format("Latency %.1f ms", synth.getLatencyMillis())));
+        timer.setInitialDelay(0);
+        timer.start();
+        return menuBar;
+    }
+
+    // Output buffering; smaller buffers answer the keyboard faster but underrun sooner
+    private JMenu createAudioMenu() {
+        JMenu menu = new JMenu("Audio");
+
+        JCheckBoxMenuItem lowLatency = new JCheckBoxMenuItem("Low Latency", synth.isLowLatencyMode());
+        lowLatency.addActionListener(e -> synth.setLowLatencyMode(lowLatency.isSelected()));
+        menu.add(lowLatency);
+
+        JMenu blockMenu = new JMenu("Block Size");
+        ButtonGroup blocks = new ButtonGroup();
+        for (int frames : new int[] {64, 128, 256, 512, 1024, 2048, 4096}) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(frames + " frames", frames == synth.getBufferFrames());
+            item.addActionListener(e -> synth.setBufferFrames(frames));
+            blocks.add(item);
+            blockMenu.add(item);
+        }
+        menu.add(blockMenu);
+
+        // How far rendering may run ahead of the device, headroom for GC and scheduling hiccups
+        JMenu ringMenu = new JMenu("Ring Buffer");
+        ButtonGroup rings = new ButtonGroup();
+        for (int millis : new int[] {10, 25, 50, 100, 200, 500}) {
+            boolean selected = Math.round(synth.getRingBufferMillis()) == millis;
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(millis + " ms", selected);
+            item.addActionListener(e -> synth.setRingBufferMillis(millis));
+            rings.add(item);
+            ringMenu.add(item);
+        }
+        menu.add(ringMenu);
+
+        JMenu lineMenu = new JMenu("Line Buffer");
+        ButtonGroup lines = new ButtonGroup();
+        for (int bytes : new int[] {1024, 2048, 4096, 8192, 16384, 32768}) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(bytes + " bytes", bytes == synth.getLineBufferBytes());
+            // Reopens the device line
+            item.addActionListener(e -> synth.setLineBufferBytes(bytes));
+            lines.add(item);
+            lineMenu.add(item);
+        }
+        menu.add(lineMenu);
+        return menu;
+    }
+
+    // Patches are stored as PatchDefinition files, the same ones BatchRenderer renders
+    private JMenu createFileMenu() {
+        JMenu menu = new JMenu("File");
+        JMenuItem open = new JMenuItem("Open Patch...");
+        open.addActionListener(e -> openPatch());
+        menu.add(open);
+        JMenuItem save = new JMenuItem("Save Patch As...");
+        save.addActionListener(e -> savePatch());
+        menu.add(save);
+        return menu;
+    }
+
+    private JFileChooser patchChooser() {
+        JFileChooser chooser = new JFileChooser(patchDirectory);
+        chooser.setFileFilter(new FileNameExtensionFilter("Patches (*.patch, *.properties)", "patch", "properties"));
+        return chooser;
+    }
+
+    private void openPatch() {
+        JFileChooser chooser = patchChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        patchDirectory = file.getParentFile();
+        try {
+            loadPatch(PatchDefinition.load(file));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Can't open patch", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void savePatch() {
+        JFileChooser chooser = patchChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        if (!file.getName().contains(".")) {
+            file = new File(file.getParentFile(), file.getName() + ".patch");
+        }
+        patchDirectory = file.getParentFile();
+        try {
+            new PatchDefinition(file.getName(), operators, modMatrix.toArray()).save(file);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Can't save patch", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Replaces every operator and the whole matrix with the definition's
+    private void loadPatch(PatchDefinition def) {
+        for (Operator op : operators) {
+            op.removeListener(operatorListener);
+        }
+        operators.clear();
+        operatorPanels.clear();
+        operatorsPanel.removeAll();
+        while (modMatrix.getSize() > 0) {
+            modMatrix.removeOperator(modMatrix.getSize() - 1);
+        }
+
+        ArrayList<Operator> ops = def.getOperators();
+        for (Operator op : ops) {
+            op.addListener(operatorListener);
+            operators.add(op);
+            modMatrix.addOperator();
+            OperatorPanel panel = new OperatorPanel(op, this);
+            operatorPanels.add(panel);
+            operatorsPanel.add(panel);
+        }
+        float[][] matrix = def.getMatrix();
+        for (int src = 0; src < ops.size(); src++) {
+            for (int dst = 0; dst < ops.size(); dst++) {
+                if (matrix[src][dst] != 0) {
+                    modMatrix.set(src, dst, matrix[src][dst]);
+                }
+            }
+        }
+
+        resizeOperatorPanels();
+        operatorsPanel.revalidate();
+        operatorsPanel.repaint();
+        modMatrixPanel.updateMatrix(operators);
+        rebuildPatch();
+    }
+
+    // Wavetable rendering: each operator pre-rendered over one period instead of evaluated per sample
+    private JMenu createSoundMenu() {
+        JMenu menu = new JMenu("Sound");
+
+        JCheckBoxMenuItem wavetables = new JCheckBoxMenuItem("Wavetables", synth.isWavetablesEnabled());
+        wavetables.addActionListener(e -> {
+            boolean enabled = wavetables.isSelected();
+            compiler.execute(() -> synth.setWavetablesEnabled(enabled));
+        });
+        menu.add(wavetables);
+
+        JMenu sizeMenu = new JMenu("Table Size");
+        ButtonGroup sizes = new ButtonGroup();
+        for (int size : new int[] {256, 512, 1024, 2048, 4096, 8192}) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(size + " samples", size == synth.getWavetableSize());
+            item.addActionListener(e -> compiler.execute(() -> synth.setWavetableSize(size)));
+            sizes.add(item);
+            sizeMenu.add(item);
+        }
+        menu.add(sizeMenu);
+
+        JMenu interpolationMenu = new JMenu("Interpolation");
+        ButtonGroup orders = new ButtonGroup();
+        String[] names = {"Linear", "Cubic"};
+        int[] values = {Wavetable.LINEAR, Wavetable.CUBIC};
+        for (int i = 0; i < values.length; i++) {
+            int order = values[i];
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(names[i], order == synth.getInterpolation());
+            item.addActionListener(e -> compiler.execute(() -> synth.setInterpolation(order)));
+            orders.add(item);
+            interpolationMenu.add(item);
+        }
+        menu.add(interpolationMenu);
+        return menu;
+    }
+
     private void resizeOperatorPanels() {
         int availableHeight = operatorsScroll.getViewport().getHeight();
         int availableWidth = operatorsScroll.getViewport().getWidth();
@@ -200,9 +409,15 @@ public class MainFrame extends JFrame {
     }
 
     private void addOperator() {
+        // Edits still waiting for a flush go out first, the patch below starts from them
+        flushChanges();
         int id = operators.size() + 1;
         Operator op = new Operator(id);
+        op.addListener(operatorListener);
+        // Compiled by addOperator below, not again by the next flush
+        op.takeDirty();
         operators.add(op);
+        modMatrix.addOperator();
 
         OperatorPanel panel = new OperatorPanel(op, this);
         operatorPanels.add(panel);
@@ -212,9 +427,9 @@ public class MainFrame extends JFrame {
         operatorsPanel.repaint();
         resizeOperatorPanels();
 
-        synth.setOperators(operators);
         modMatrixPanel.updateMatrix(operators);
-        synth.setModMatrix(modMatrixPanel.getMatrixValues());
+        Operator copy = op.copy();
+        compiler.execute(() -> synth.addOperator(copy));
     }
 
     public void removeOperator(int id) {
@@ -230,8 +445,11 @@ public class MainFrame extends JFrame {
 
         if (indexToRemove == -1) return;
 
-        operators.remove(indexToRemove);
+        // Recorded cells are indexed by the old layout
+        flushChanges();
+        operators.remove(indexToRemove).removeListener(operatorListener);
         operatorPanels.remove(indexToRemove);
+        modMatrix.removeOperator(indexToRemove);
 
         // Renumber and rebuild
         operatorsPanel.removeAll();
@@ -249,31 +467,66 @@ public class MainFrame extends JFrame {
         operatorsPanel.revalidate();
         operatorsPanel.repaint();
 
-        synth.setOperators(operators);
         modMatrixPanel.updateMatrix(operators);
-        synth.setModMatrix(modMatrixPanel.getMatrixValues());
+        int index = indexToRemove;
+        compiler.execute(() -> synth.removeOperator(index));
     }
 
-    public void updateSynthesis() {
-        synth.setOperators(operators);
-        if (modMatrixPanel != null) {
-            synth.setModMatrix(modMatrixPanel.getMatrixValues());
+    // Full compile after the operator list was replaced; whatever was dirty is covered by it
+    private void rebuildPatch() {
+        for (Operator op : operators) {
+            op.takeDirty();
+        }
+        modMatrix.takeDirty();
+        changedCount = 0;
+        ArrayList<Operator> copies = new ArrayList<>();
+        for (Operator op : operators) {
+            copies.add(op.copy());
         }
+        float[][] matrix = modMatrix.toArray();
+        compiler.execute(() -> synth.setPatch(copies, matrix));
     }
 
-    public void globalRefresh() {
-        synth.setOperators(operators);
-        if (modMatrixPanel != null) {
-            synth.setModMatrix(modMatrixPanel.getMatrixValues());
+    // A drag changes the same cell over and over, that's recorded once
+    private void cellChanged(int src, int dst) {
+        if (changedCount > 0 && changedCells[changedCount - 2] == src && changedCells[changedCount - 1] == dst) return;
+        if (changedCount == changedCells.length) {
+            changedCells = Arrays.copyOf(changedCells, changedCount * 2);
         }
+        changedCells[changedCount++] = src;
+        changedCells[changedCount++] = dst;
+    }
 
-        for (OperatorPanel opPanel : operatorPanels) {
-            opPanel.refreshCanvas();
-        }
+    // Several events from one edit end up in a single flush
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        SwingUtilities.invokeLater(this::flushChanges);
+    }
 
-        if (oscilloscope != null) {
-            oscilloscope.updateSamples(synth.getSamples());
+    private void flushChanges() {
+        flushScheduled = false;
+        for (int i = 0; i < operators.size(); i++) {
+            int fields = operators.get(i).takeDirty();
+            if (fields != 0) {
+                int index = i;
+                Operator copy = operators.get(i).copy();
+                compiler.execute(() -> synth.updateOperator(index, copy, fields));
+            }
+            if ((fields & Operator.CARRIER) != 0) {
+                // Matrix headers are colored by carrier/modulator
+                modMatrixPanel.repaint();
+            }
+        }
+        if (modMatrix.takeDirty()) {
+            for (int i = 0; i < changedCount; i += 2) {
+                int src = changedCells[i];
+                int dst = changedCells[i + 1];
+                float depth = modMatrix.get(src, dst);
+                compiler.execute(() -> synth.setRoute(src, dst, depth));
+            }
         }
+        changedCount = 0;
     }
 
     public ArrayList<Operator> getOperators() {
@@ -0,0 +1,67 @@
+import javax.sound.midi.*;
+
+// Plays notes from MIDI keyboards. Messages arrive on the MIDI driver's thread and go
+// through the engine's event queue like keyboard clicks, stamped on arrival, so nothing
+// here blocks the driver or touches the voices directly.
+public class MidiInput implements Receiver {
+    // Controller 123, all notes off
+    private static final int ALL_NOTES_OFF = 123;
+
+    private final Synthesis synth;
+
+    public MidiInput(Synthesis synth) {
+        this.synth = synth;
+    }
+
+    // Opens every MIDI input device and returns how many are connected
+    public static int connectAll(Synthesis synth) {
+        int connected = 0;
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            try {
+                MidiDevice device = MidiSystem.getMidiDevice(info);
+                // Only real inputs, not Java's own sequencer and synthesizer
+                if (device instanceof Sequencer || device instanceof Synthesizer) continue;
+                if (device.getMaxTransmitters() == 0) continue;
+                device.open();
+                device.getTransmitter().setReceiver(new MidiInput(synth));
+                connected++;
+            } catch (MidiUnavailableException | IllegalArgumentException e) {
+                // Busy or gone, the rest still work
+            }
+        }
+        return connected;
+    }
+
+    @Override
+    public void send(MidiMessage message, long timeStamp) {
+        if (!(message instanceof ShortMessage)) return;
+        ShortMessage m = (ShortMessage) message;
+        int note = m.getData1();
+        switch (m.getCommand()) {
+            case ShortMessage.NOTE_ON:
+                // Velocity 0 is a note off
+                if (m.getData2() > 0) {
+                    synth.noteOn(note, midiToFreq(note));
+                } else {
+                    synth.noteOff(note);
+                }
+                break;
+            case ShortMessage.NOTE_OFF:
+                synth.noteOff(note);
+                break;
+            case ShortMessage.CONTROL_CHANGE:
+                if (note == ALL_NOTES_OFF) synth.stopSignal();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static double midiToFreq(int midiNote) {
+        return 440.0 * Math.pow(2, (midiNote - 69) / 12.0);
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Modulation depths between operators, 0.0-10.0 per cell (row modulates column), with
+// change events and dirty tracking like Operator. The diagonal is always 0.
+//
+// Depths are one flat float array. Each operator owns a physical slot (its row and
+// column in that array) that never moves, so adding or removing an operator doesn't
+// copy the other N x N depths: removal just frees the slot and shifts the slot list.
+// A reused slot isn't cleared either: every cell remembers when it was last set and
+// every slot when it was last handed out, and a cell set before either of its slots
+// was handed out reads as 0.
+public class ModMatrix {
+    public static final int MAX_DEPTH = 10;
+
+    // Told about every actual change; src and dst are -1 when rows/columns were added or removed
+    public interface Listener {
+        void matrixChanged(ModMatrix matrix, int src, int dst);
+    }
+
+    private int size = 0;
+    // Slots per row, grows by doubling
+    private int capacity = 0;
+    // Row-major by slot: depth from slot a to slot b is at a * capacity + b
+    private float[] depths = new float[0];
+    // Edit count when each cell was last set, and when each slot was last handed out
+    private int[] cellStamps = new int[0];
+    private int[] slotStamps = new int[0];
+    private int clock = 0;
+    // Slot of each operator, in operator order
+    private int[] slots = new int[0];
+    // Slots of removed operators, reused first
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    // True when something changed since the last takeDirty()
+    private boolean dirty = true;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+
+    public int getSize() {
+        return size;
+    }
+
+    public float get(int src, int dst) {
+        return depth(slots[src], slots[dst]);
+    }
+
+    private float depth(int a, int b) {
+        int index = a * capacity + b;
+        return cellStamps[index] > Math.max(slotStamps[a], slotStamps[b]) ? depths[index] : 0;
+    }
+
+    // Clamped to 0-MAX_DEPTH; the diagonal can't be set
+    public void set(int src, int dst, float depth) {
+        if (src == dst) return;
+        float value = Math.max(0, Math.min(MAX_DEPTH, depth));
+        int a = slots[src];
+        int b = slots[dst];
+        if (depth(a, b) == value) return;
+        int index = a * capacity + b;
+        depths[index] = value;
+        cellStamps[index] = ++clock;
+        changed(src, dst);
+    }
+
+    // Appends a row and column for a new last operator, all zero
+    public void addOperator() {
+        if (size == capacity) {
+            grow(Math.max(4, capacity * 2));
+        }
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : size;
+        // A reused slot still has the old operator's depths, newer than them it reads as 0
+        slotStamps[slot] = ++clock;
+        slots[size++] = slot;
+        changed(-1, -1);
+    }
+
+    // Removes an operator's row and column, the other routes keep their depths. Shifting
+    // the slot list is the only part that depends on the size, it's one int per operator.
+    public void removeOperator(int index) {
+        freeSlots[freeCount++] = slots[index];
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        size--;
+        changed(-1, -1);
+    }
+
+    // Only runs when every slot is taken; amortized over the adds since the last grow
+    private void grow(int newCapacity) {
+        float[] grown = new float[newCapacity * newCapacity];
+        int[] grownStamps = new int[newCapacity * newCapacity];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(depths, row * capacity, grown, row * newCapacity, capacity);
+            System.arraycopy(cellStamps, row * capacity, grownStamps, row * newCapacity, capacity);
+        }
+        int[] newSlots = new int[newCapacity];
+        System.arraycopy(slots, 0, newSlots, 0, size);
+        depths = grown;
+        cellStamps = grownStamps;
+        slotStamps = Arrays.copyOf(slotStamps, newCapacity);
+        slots = newSlots;
+        freeSlots = new int[newCapacity];
+        capacity = newCapacity;
+    }
+
+    // Copy in the layout Patch.compile takes
+    public float[][] toArray() {
+        float[][] copy = new float[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                copy[i][j] = get(i, j);
+            }
+        }
+        return copy;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    // Returns whether anything changed since the last call and clears the flag
+    public boolean takeDirty() {
+        boolean was = dirty;
+        dirty = false;
+        return was;
+    }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    private void changed(int src, int dst) {
+        dirty = true;
+        // Backwards, so a listener can remove itself
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            listeners.get(i).matrixChanged(this, src, dst);
+        }
+    }
+}
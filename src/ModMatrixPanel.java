@@ -2,25 +2,66 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 
+// The mod matrix as one painted grid in a scroll pane. Only the cells and headers in
+// view are painted, so a 256 x 256 matrix costs the same to draw as a 4 x 4 one, and
+// adding or removing an operator just changes the grid's size. Click selects a cell,
+// dragging up or down sets its depth in tenths, double-click, Enter or a digit edits it
+// in place.
 public class ModMatrixPanel extends JPanel {
-    private ArrayList<Operator> operators;
-    private JTextField[][] matrixFields;
-    private JPanel gridPanel;
-    private JPanel gridWrapper;
-    private MainFrame parent;
+    private static final int MIN_CELL = 28;
+    private static final int MAX_CELL = 64;
+    private static final int HEADER_SIZE = 28;
+    private static final int GAP = 4;
+    // Vertical drag distance for a tenth of a depth step
+    private static final int PIXELS_PER_TENTH = 2;
+    private static final Font CORNER_FONT = new Font("SansSerif", Font.PLAIN, 9);
+    // Cell labels for 0.0 to 10.0 in tenths, so painting doesn't format strings
+    private static final String[] LABELS = new String[ModMatrix.MAX_DEPTH * 10 + 1];
+    static {
+        for (int i = 0; i < LABELS.length; i++) {
+            LABELS[i] = i % 10 == 0 ? String.valueOf(i / 10) : (i / 10) + "." + (i % 10);
+        }
+    }
+
+    private ArrayList<Operator> operators = new ArrayList<>();
+    private ModMatrix matrix;
+    private final Grid grid = new Grid();
+    private final Header columnHeader = new Header(true);
+    private final Header rowHeader = new Header(false);
+    private final JScrollPane scroll;
+    private int cellSize = MAX_CELL;
+    private Font cellFont;
+    private Font headerFont;
+
+    // Selected cell, -1 when none
+    private int selectedRow = -1;
+    private int selectedCol = -1;
+    // One editor, moved onto whichever cell is being edited
+    private final JTextField editor = new JTextField();
+    private int editRow = -1;
+    private int editCol = -1;
+    // Drag-to-set state
+    private int dragStartY;
+    private float dragStartDepth;
+    private boolean dragging = false;
 
     // Colors
     private Color bgColor = new Color(45, 47, 52);
     private Color headerBgColor = new Color(55, 57, 62);
+    private Color carrierHeaderColor = new Color(60, 80, 70);
+    private Color modulatorHeaderColor = new Color(80, 65, 55);
     private Color cellBgColor = new Color(240, 242, 245);
+    private Color cellActiveColor = new Color(200, 225, 250);
     private Color cellDisabledBg = new Color(50, 52, 57);
     private Color borderColor = new Color(65, 67, 72);
     private Color textColor = new Color(210, 212, 218);
+    private Color cellTextColor = new Color(30, 32, 38);
     private Color mutedTextColor = new Color(140, 142, 148);
     private Color accentColor = new Color(100, 180, 255);
 
-    public ModMatrixPanel(MainFrame parentFrame) {
-        parent = parentFrame;
+    // Edits go straight into the model, which tells its listeners
+    public ModMatrixPanel(ModMatrix model) {
+        matrix = model;
         setLayout(new BorderLayout(0, 15));
         setBackground(bgColor);
         setBorder(BorderFactory.createCompoundBorder(
@@ -39,7 +80,7 @@ public class ModMatrixPanel extends JPanel {
         titleLabel.setForeground(textColor);
         titleLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
-        JLabel subtitleLabel = new JLabel("Rows modulate columns \u2022 Values: 0-10");
+        JLabel subtitleLabel = new JLabel("Rows modulate columns \u2022 Values: 0-10, fractions allowed \u2022 Drag or type to edit");
         subtitleLabel.setFont(new Font("SansSerif", Font.PLAIN, 11));
         subtitleLabel.setForeground(mutedTextColor);
         subtitleLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -50,197 +91,369 @@ public class ModMatrixPanel extends JPanel {
 
         add(titlePanel, BorderLayout.NORTH);
 
-        // Grid wrapper to center the matrix
-        gridWrapper = new JPanel(new GridBagLayout());
-        gridWrapper.setBackground(bgColor);
-
-        gridPanel = new JPanel();
-        gridPanel.setBackground(bgColor);
-
-        gridWrapper.add(gridPanel);
-        add(gridWrapper, BorderLayout.CENTER);
+        // Grid with headers that scroll along
+        scroll = new JScrollPane(grid);
+        scroll.setColumnHeaderView(columnHeader);
+        scroll.setRowHeaderView(rowHeader);
+        scroll.setCorner(JScrollPane.UPPER_LEFT_CORNER, new Corner());
+        scroll.setBorder(null);
+        scroll.setBackground(bgColor);
+        scroll.getViewport().setBackground(bgColor);
+        scroll.getViewport().addComponentListener(new java.awt.event.ComponentAdapter() {
+            public void componentResized(java.awt.event.ComponentEvent e) {
+                updateCellSize();
+            }
+        });
+        add(scroll, BorderLayout.CENTER);
 
-        operators = new ArrayList<>();
-        matrixFields = new JTextField[0][0];
+        setupEditor();
+        matrix.addListener((m, src, dst) -> {
+            if (src < 0) {
+                updateCellSize();
+            } else {
+                grid.repaint(cellBounds(src, dst));
+            }
+        });
+        updateCellSize();
     }
 
+    // Called after operators were added or removed; nothing is rebuilt
     public void updateMatrix(ArrayList<Operator> ops) {
         operators = ops;
-        int numOps = operators.size();
-
-        // Save old matrix values
-        int[][] oldValues = null;
-        int oldSize = 0;
-        if (matrixFields != null && matrixFields.length > 0) {
-            oldSize = matrixFields.length;
-            oldValues = new int[oldSize][oldSize];
-            for (int i = 0; i < oldSize; i++) {
-                for (int j = 0; j < oldSize; j++) {
-                    try {
-                        oldValues[i][j] = Integer.parseInt(matrixFields[i][j].getText().trim());
-                    } catch (NumberFormatException e) {
-                        oldValues[i][j] = 0;
-                    }
-                }
-            }
+        cancelEdit();
+        if (selectedRow >= matrix.getSize() || selectedCol >= matrix.getSize()) {
+            selectedRow = -1;
+            selectedCol = -1;
         }
+        updateCellSize();
+    }
 
-        // Clear existing grid
-        // Clear existing grid
-        // Clear existing grid
-        // Clear existing grid
-        gridPanel.removeAll();
-
-        int gap = 5;
-        int availableSize = Math.min(gridWrapper.getWidth(), gridWrapper.getHeight());
-        if (availableSize < 100) availableSize = 400;  // default before first render
-        int totalMatrixSize = (int)(availableSize * 0.85);  // 85% of container
-        int numCells = numOps + 1;
-        int cellSize = (totalMatrixSize - (gap * (numCells - 1))) / numCells;
-
-// Create new grid layout
-        gridPanel.setLayout(new GridLayout(numOps + 1, numOps + 1, gap, gap));
-        gridPanel.setPreferredSize(new Dimension(totalMatrixSize, totalMatrixSize));
-        matrixFields = new JTextField[numOps][numOps];
-
-        // Top-left corner (arrow indicator)
-        JPanel cornerPanel = createHeaderCell("\u2193 mod \u2192", true, numOps);
-        gridPanel.add(cornerPanel);
-
-        // Column headers (destinations)
-        for (int j = 0; j < numOps; j++) {
-            String label = String.valueOf(j + 1);
-            JPanel headerPanel = createHeaderCell(label, false, numOps);
-            // Color code based on carrier/modulator
-            if (operators.get(j).isCarrier()) {
-                headerPanel.setBackground(new Color(60, 80, 70));
-            } else {
-                headerPanel.setBackground(new Color(80, 65, 55));
-            }
-            gridPanel.add(headerPanel);
+    // Cells shrink to fit the view down to MIN_CELL, after that the grid scrolls
+    private void updateCellSize() {
+        int n = Math.max(1, matrix.getSize());
+        Dimension view = scroll.getViewport().getExtentSize();
+        int fit = view.width > 0 ? Math.min(view.width, view.height) / n : MAX_CELL;
+        int size = Math.max(MIN_CELL, Math.min(MAX_CELL, fit));
+        if (size != cellSize || cellFont == null) {
+            cellSize = size;
+            cellFont = new Font("SansSerif", Font.BOLD, Math.max(10, size / 3));
+            headerFont = new Font("SansSerif", Font.BOLD, Math.max(9, Math.min(14, size / 3)));
         }
+        if (editRow >= 0) {
+            editor.setBounds(cellBounds(editRow, editCol));
+        }
+        grid.revalidate();
+        columnHeader.revalidate();
+        rowHeader.revalidate();
+        grid.repaint();
+        columnHeader.repaint();
+        rowHeader.repaint();
+    }
 
-        // Row headers and matrix cells
-        for (int i = 0; i < numOps; i++) {
-            // Row header (source)
-            String label = String.valueOf(i + 1);
-            JPanel rowHeader = createHeaderCell(label, false, numOps);
-            // Color code based on carrier/modulator
-            if (operators.get(i).isCarrier()) {
-                rowHeader.setBackground(new Color(60, 80, 70));
-            } else {
-                rowHeader.setBackground(new Color(80, 65, 55));
-            }
-            gridPanel.add(rowHeader);
+    private Rectangle cellBounds(int row, int col) {
+        return new Rectangle(col * cellSize, row * cellSize, cellSize, cellSize);
+    }
 
-            // Matrix cells
-            for (int j = 0; j < numOps; j++) {
-                String initialValue = "0";
-                if (oldValues != null && i < oldSize && j < oldSize) {
-                    initialValue = String.valueOf(oldValues[i][j]);
-                }
+    // Rounded to tenths
+    private static String label(float depth) {
+        return LABELS[Math.round(depth * 10)];
+    }
 
-                JTextField field = new JTextField(initialValue);
-                field.setHorizontalAlignment(JTextField.CENTER);
-                // Scale font based on cell size
-                int fontSize = Math.max(10, 18 - numOps);
-                field.setFont(new Font("SansSerif", Font.BOLD, fontSize));
-                field.setPreferredSize(new Dimension(cellSize, cellSize));
-                field.setMinimumSize(new Dimension(cellSize, cellSize));
-
-                // Disable diagonal (can't modulate itself)
-                if (i == j) {
-                    field.setEnabled(false);
-                    field.setBackground(cellDisabledBg);
-                    field.setForeground(new Color(80, 82, 87));
-                    field.setText("-");
-                    field.setBorder(BorderFactory.createLineBorder(new Color(55, 57, 62), 1));
-                } else {
-                    field.setBackground(cellBgColor);
-                    field.setForeground(new Color(30, 32, 38));
-                    field.setBorder(BorderFactory.createCompoundBorder(
-                            BorderFactory.createLineBorder(borderColor, 1),
-                            BorderFactory.createEmptyBorder(2, 2, 2, 2)
-                    ));
-
-                    // Focus highlighting
-                    field.addFocusListener(new java.awt.event.FocusAdapter() {
-                        public void focusGained(java.awt.event.FocusEvent e) {
-                            field.setBorder(BorderFactory.createCompoundBorder(
-                                    BorderFactory.createLineBorder(accentColor, 2),
-                                    BorderFactory.createEmptyBorder(1, 1, 1, 1)
-                            ));
-                            field.selectAll();
-                        }
-                        public void focusLost(java.awt.event.FocusEvent e) {
-                            field.setBorder(BorderFactory.createCompoundBorder(
-                                    BorderFactory.createLineBorder(borderColor, 1),
-                                    BorderFactory.createEmptyBorder(2, 2, 2, 2)
-                            ));
-                            validateAndUpdate(field);
-                        }
-                    });
-
-                    field.addActionListener(e -> validateAndUpdate(field));
-                }
+    private boolean isCarrier(int op) {
+        return op < operators.size() && operators.get(op).isCarrier();
+    }
 
-                matrixFields[i][j] = field;
-                gridPanel.add(field);
-            }
-        }
+    // ========== SELECTION AND EDITING ==========
 
-        revalidate();
-        repaint();
+    private void select(int row, int col) {
+        if (selectedRow >= 0) grid.repaint(cellBounds(selectedRow, selectedCol));
+        selectedRow = row;
+        selectedCol = col;
+        grid.repaint(cellBounds(row, col));
+        grid.scrollRectToVisible(cellBounds(row, col));
     }
 
-    private JPanel createHeaderCell(String text, boolean isCorner, int numOps) {
-        JPanel panel = new JPanel(new GridBagLayout());
-        panel.setBackground(headerBgColor);
-        panel.setBorder(BorderFactory.createLineBorder(borderColor, 1));
+    // Moves the selection, skipping the diagonal
+    private void moveSelection(int dRow, int dCol) {
+        int n = matrix.getSize();
+        if (n < 2) return;
+        if (selectedRow < 0) {
+            select(0, 1);
+            return;
+        }
+        int row = Math.max(0, Math.min(n - 1, selectedRow + dRow));
+        int col = Math.max(0, Math.min(n - 1, selectedCol + dCol));
+        if (row == col) {
+            int step = dCol != 0 ? dCol : dRow;
+            col = col + step >= 0 && col + step < n ? col + step : col - step;
+        }
+        select(row, col);
+    }
 
-        int fontSize = Math.max(9, 16 - numOps);
-        JLabel label = new JLabel(text, SwingConstants.CENTER);
-        label.setFont(new Font("SansSerif", isCorner ? Font.PLAIN : Font.BOLD, isCorner ? Math.max(8, fontSize - 2) : fontSize));
-        label.setForeground(isCorner ? mutedTextColor : textColor);
+    private void setupEditor() {
+        editor.setHorizontalAlignment(JTextField.CENTER);
+        editor.setBackground(cellBgColor);
+        editor.setForeground(cellTextColor);
+        editor.setBorder(BorderFactory.createLineBorder(accentColor, 2));
+        editor.setVisible(false);
+        editor.addActionListener(e -> {
+            commitEdit();
+            grid.requestFocusInWindow();
+        });
+        editor.addFocusListener(new java.awt.event.FocusAdapter() {
+            public void focusLost(java.awt.event.FocusEvent e) {
+                commitEdit();
+            }
+        });
+        editor.addKeyListener(new java.awt.event.KeyAdapter() {
+            public void keyPressed(java.awt.event.KeyEvent e) {
+                if (e.getKeyCode() == java.awt.event.KeyEvent.VK_ESCAPE) {
+                    cancelEdit();
+                    grid.requestFocusInWindow();
+                }
+            }
+        });
+        grid.add(editor);
+    }
 
-        panel.add(label);
-        return panel;
+    // Opens the editor on a cell; text replaces the value, null keeps it
+    private void startEdit(int row, int col, String text) {
+        if (row == col) return;
+        commitEdit();
+        select(row, col);
+        editRow = row;
+        editCol = col;
+        editor.setFont(cellFont);
+        editor.setBounds(cellBounds(row, col));
+        editor.setText(text != null ? text : label(matrix.get(row, col)));
+        editor.setVisible(true);
+        editor.requestFocusInWindow();
+        if (text == null) editor.selectAll();
     }
 
-    private void validateAndUpdate(JTextField field) {
+    // Only this cell is parsed; the model ignores values that didn't change
+    private void commitEdit() {
+        if (editRow < 0) return;
+        int row = editRow;
+        int col = editCol;
+        String text = editor.getText().trim();
+        cancelEdit();
+        float value;
         try {
-            int value = Integer.parseInt(field.getText().trim());
-            // Clamp to 0-10
-            value = Math.max(0, Math.min(10, value));
-            field.setText(String.valueOf(value));
+            // The model clamps to 0-10
+            value = Float.parseFloat(text);
         } catch (NumberFormatException e) {
-            field.setText("0");
+            value = 0;
         }
-
-        if (parent != null) {
-            parent.globalRefresh();
+        if (Float.isNaN(value)) value = 0;
+        if (row < matrix.getSize() && col < matrix.getSize()) {
+            matrix.set(row, col, value);
         }
     }
 
-    public int[][] getMatrixValues() {
-        int numOps = operators.size();
-        int[][] values = new int[numOps][numOps];
+    private void cancelEdit() {
+        if (editRow < 0) return;
+        editRow = -1;
+        editCol = -1;
+        editor.setVisible(false);
+        grid.repaint();
+    }
 
-        for (int i = 0; i < numOps; i++) {
-            for (int j = 0; j < numOps; j++) {
-                if (i == j) {
-                    values[i][j] = 0;
-                } else {
-                    try {
-                        values[i][j] = Integer.parseInt(matrixFields[i][j].getText().trim());
-                    } catch (NumberFormatException e) {
-                        values[i][j] = 0;
-                        matrixFields[i][j].setText("0");
+    // ========== GRID ==========
+
+    private class Grid extends JComponent implements Scrollable {
+        Grid() {
+            setLayout(null);
+            setFocusable(true);
+            setToolTipText("");
+
+            java.awt.event.MouseAdapter mouse = new java.awt.event.MouseAdapter() {
+                public void mousePressed(java.awt.event.MouseEvent e) {
+                    requestFocusInWindow();
+                    int row = e.getY() / cellSize;
+                    int col = e.getX() / cellSize;
+                    if (row >= matrix.getSize() || col >= matrix.getSize() || row == col) return;
+                    commitEdit();
+                    select(row, col);
+                    dragStartY = e.getY();
+                    dragStartDepth = matrix.get(row, col);
+                    dragging = true;
+                }
+                public void mouseDragged(java.awt.event.MouseEvent e) {
+                    if (!dragging) return;
+                    int tenths = Math.round(dragStartDepth * 10) + (dragStartY - e.getY()) / PIXELS_PER_TENTH;
+                    matrix.set(selectedRow, selectedCol, tenths / 10f);
+                }
+                public void mouseReleased(java.awt.event.MouseEvent e) {
+                    dragging = false;
+                }
+                public void mouseClicked(java.awt.event.MouseEvent e) {
+                    if (e.getClickCount() == 2 && selectedRow >= 0) startEdit(selectedRow, selectedCol, null);
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+
+            addKeyListener(new java.awt.event.KeyAdapter() {
+                public void keyPressed(java.awt.event.KeyEvent e) {
+                    switch (e.getKeyCode()) {
+                        case java.awt.event.KeyEvent.VK_UP: moveSelection(-1, 0); break;
+                        case java.awt.event.KeyEvent.VK_DOWN: moveSelection(1, 0); break;
+                        case java.awt.event.KeyEvent.VK_LEFT: moveSelection(0, -1); break;
+                        case java.awt.event.KeyEvent.VK_RIGHT: moveSelection(0, 1); break;
+                        case java.awt.event.KeyEvent.VK_ENTER:
+                        case java.awt.event.KeyEvent.VK_F2:
+                            if (selectedRow >= 0) startEdit(selectedRow, selectedCol, null);
+                            break;
+                        case java.awt.event.KeyEvent.VK_DELETE:
+                        case java.awt.event.KeyEvent.VK_BACK_SPACE:
+                            if (selectedRow >= 0) matrix.set(selectedRow, selectedCol, 0);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                public void keyTyped(java.awt.event.KeyEvent e) {
+                    if (selectedRow >= 0 && (Character.isDigit(e.getKeyChar()) || e.getKeyChar() == '.')) {
+                        startEdit(selectedRow, selectedCol, String.valueOf(e.getKeyChar()));
                     }
                 }
+            });
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int side = matrix.getSize() * cellSize;
+            return new Dimension(side, side);
+        }
+
+        @Override
+        public String getToolTipText(java.awt.event.MouseEvent e) {
+            int row = e.getY() / cellSize;
+            int col = e.getX() / cellSize;
+            if (row >= matrix.getSize() || col >= matrix.getSize() || row == col) return null;
+            return "Op " + (row + 1) + " \u2192 Op " + (col + 1) + ": " + label(matrix.get(row, col));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            Rectangle clip = g.getClipBounds();
+            g2d.setColor(bgColor);
+            g2d.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            // Only the cells that intersect the clip
+            int n = matrix.getSize();
+            int firstRow = clip.y / cellSize;
+            int lastRow = Math.min(n - 1, (clip.y + clip.height - 1) / cellSize);
+            int firstCol = clip.x / cellSize;
+            int lastCol = Math.min(n - 1, (clip.x + clip.width - 1) / cellSize);
+
+            g2d.setFont(cellFont);
+            FontMetrics fm = g2d.getFontMetrics();
+            int inner = cellSize - GAP;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int x = col * cellSize + GAP / 2;
+                    int y = row * cellSize + GAP / 2;
+                    if (row == col) {
+                        // Can't modulate itself
+                        g2d.setColor(cellDisabledBg);
+                        g2d.fillRect(x, y, inner, inner);
+                        continue;
+                    }
+
+                    float depth = matrix.get(row, col);
+                    g2d.setColor(cellBgColor);
+                    g2d.fillRect(x, y, inner, inner);
+                    if (depth > 0) {
+                        // Fill level shows the depth
+                        int level = (int) (inner * depth / ModMatrix.MAX_DEPTH);
+                        g2d.setColor(cellActiveColor);
+                        g2d.fillRect(x, y + inner - level, inner, level);
+                    }
+                    boolean selected = row == selectedRow && col == selectedCol;
+                    g2d.setColor(selected ? accentColor : borderColor);
+                    g2d.drawRect(x, y, inner - 1, inner - 1);
+                    if (selected) g2d.drawRect(x + 1, y + 1, inner - 3, inner - 3);
+
+                    if (row == editRow && col == editCol) continue;
+                    String label = label(depth);
+                    g2d.setColor(depth > 0 ? cellTextColor : mutedTextColor);
+                    g2d.drawString(label, x + (inner - fm.stringWidth(label)) / 2, y + (inner + fm.getAscent() - fm.getDescent()) / 2);
+                }
             }
         }
 
-        return values;
+        public Dimension getPreferredScrollableViewportSize() { return getPreferredSize(); }
+        public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) { return cellSize; }
+        public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visible.height : visible.width;
+        }
+        public boolean getScrollableTracksViewportWidth() { return false; }
+        public boolean getScrollableTracksViewportHeight() { return false; }
+    }
+
+    // Operator numbers along the top (destinations) or left (sources), colored by carrier/modulator
+    private class Header extends JComponent {
+        private final boolean columns;
+
+        Header(boolean columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int length = matrix.getSize() * cellSize;
+            return columns ? new Dimension(length, HEADER_SIZE) : new Dimension(HEADER_SIZE, length);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            Rectangle clip = g.getClipBounds();
+            g2d.setColor(bgColor);
+            g2d.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            int from = columns ? clip.x : clip.y;
+            int to = from + (columns ? clip.width : clip.height) - 1;
+            int first = from / cellSize;
+            int last = Math.min(matrix.getSize() - 1, to / cellSize);
+
+            g2d.setFont(headerFont);
+            FontMetrics fm = g2d.getFontMetrics();
+            int inner = cellSize - GAP;
+            for (int op = first; op <= last; op++) {
+                int x = columns ? op * cellSize + GAP / 2 : GAP / 2;
+                int y = columns ? GAP / 2 : op * cellSize + GAP / 2;
+                int w = columns ? inner : HEADER_SIZE - GAP;
+                int h = columns ? HEADER_SIZE - GAP : inner;
+                g2d.setColor(isCarrier(op) ? carrierHeaderColor : modulatorHeaderColor);
+                g2d.fillRect(x, y, w, h);
+                g2d.setColor(borderColor);
+                g2d.drawRect(x, y, w - 1, h - 1);
+
+                String label = String.valueOf(op + 1);
+                g2d.setColor(textColor);
+                g2d.drawString(label, x + (w - fm.stringWidth(label)) / 2, y + (h + fm.getAscent() - fm.getDescent()) / 2);
+            }
+        }
+    }
+
+    // Top-left corner (arrow indicator)
+    private class Corner extends JComponent {
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setColor(headerBgColor);
+            g2d.fillRect(GAP / 2, GAP / 2, getWidth() - GAP, getHeight() - GAP);
+            g2d.setFont(CORNER_FONT);
+            g2d.setColor(mutedTextColor);
+            FontMetrics fm = g2d.getFontMetrics();
+            String label = "\u2193\u2192";
+            g2d.drawString(label, (getWidth() - fm.stringWidth(label)) / 2, (getHeight() + fm.getAscent() - fm.getDescent()) / 2);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+import javax.sound.sampled.*;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Renders a patch and a list of notes to a WAV file as fast as the CPU allows,
+// on its own Synthesis instance without an audio line.
+public class OfflineRenderer {
+    // Long enough for the voice release (120 ms) to finish after the last note
+    private static final double TAIL_SECONDS = 0.2;
+
+    public static class Note {
+        private final int pitch;
+        private final double start;
+        private final double duration;
+
+        // MIDI note number, start and duration in seconds
+        public Note(int pitch, double start, double duration) {
+            this.pitch = pitch;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        public int getPitch() { return pitch; }
+        public double getStart() { return start; }
+        public double getDuration() { return duration; }
+
+        public double getFrequency() {
+            return 440.0 * Math.pow(2, (pitch - 69) / 12.0);
+        }
+    }
+
+    public static class Result {
+        private final int frames;
+        private final int sampleRate;
+        private final long renderNanos;
+
+        Result(int frames, int sampleRate, long renderNanos) {
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+            this.renderNanos = renderNanos;
+        }
+
+        public int getFrames() { return frames; }
+        public double getAudioSeconds() { return (double) frames / sampleRate; }
+        public double getRenderSeconds() { return renderNanos / 1e9; }
+        public long getRenderNanos() { return renderNanos; }
+
+        // How many seconds of audio were produced per second of wall-clock time
+        public double getRealTimeFactor() {
+            return renderNanos > 0 ? getAudioSeconds() / getRenderSeconds() : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private final Synthesis synth;
+    private long lastRenderNanos = 0;
+
+    public OfflineRenderer() {
+        this(new Synthesis(false));
+    }
+
+    public OfflineRenderer(Synthesis engine) {
+        synth = engine;
+        synth.setPolyphony(VoicePool.MAX_VOICES);
+    }
+
+    public Synthesis getEngine() {
+        return synth;
+    }
+
+    public Result renderToFile(List<Operator> ops, float[][] matrix, List<Note> notes, File wavFile) throws IOException {
+        short[] samples = render(ops, matrix, notes);
+        writeWav(samples, synth.getSampleRate(), wavFile);
+        return new Result(samples.length, synth.getSampleRate(), lastRenderNanos);
+    }
+
+    // Renders the notes to 16-bit mono samples, starting from silence
+    public short[] render(List<Operator> ops, float[][] matrix, List<Note> notes) {
+        int sampleRate = synth.getSampleRate();
+        synth.setPatch(new ArrayList<>(ops), matrix);
+        synth.resetVoices();
+
+        // Note on/off events in frame order; ties put note-offs first so a voice that ends
+        // where the next note starts is free for it
+        int numEvents = notes.size() * 2;
+        long[] events = new long[numEvents];
+        int lastFrame = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            Note note = notes.get(i);
+            int on = (int) Math.round(note.getStart() * sampleRate);
+            int off = on + (int) Math.round(note.getDuration() * sampleRate);
+            events[2 * i] = ((long) on << 32) | (1L << 31) | i;
+            events[2 * i + 1] = ((long) off << 32) | i;
+            lastFrame = Math.max(lastFrame, off);
+        }
+        Arrays.sort(events);
+
+        int totalFrames = lastFrame + (int) (TAIL_SECONDS * sampleRate);
+        short[] samples = new short[totalFrames];
+
+        // Each note plays under its own id, so overlapping notes of the same pitch
+        // are released one by one
+        int[] ids = new int[notes.size()];
+        long start = System.nanoTime();
+        int cursor = 0;
+        for (long event : events) {
+            int frame = (int) (event >>> 32);
+            if (frame > cursor) {
+                synth.render(samples, cursor, frame - cursor);
+                cursor = frame;
+            }
+            int index = (int) (event & 0x7FFFFFFFL);
+            if ((event & (1L << 31)) != 0) {
+                ids[index] = synth.startNoteAt(synth.currentFrame(), notes.get(index).getFrequency());
+            } else {
+                synth.noteOffAt(synth.currentFrame(), ids[index]);
+            }
+        }
+        synth.render(samples, cursor, totalFrames - cursor);
+        lastRenderNanos = System.nanoTime() - start;
+        return samples;
+    }
+
+    public static void writeWav(short[] samples, int sampleRate, File wavFile) throws IOException {
+        byte[] bytes = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            short v = samples[i];
+            bytes[2 * i] = (byte)(v & 0xFF);          // little endian
+            bytes[2 * i + 1] = (byte)((v >> 8) & 0xFF);
+        }
+
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(bytes), format, samples.length);
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wavFile);
+    }
+}
@@ -1,11 +1,28 @@
+import java.util.ArrayList;
+
 //each operator goes inside the OperatorPanel
 
 public class Operator {
+    // Field bits for change events and dirty tracking
+    public static final int FUNCTION = 1;
+    public static final int PERIOD = 2;
+    public static final int FREQUENCY = 4;
+    public static final int CARRIER = 8;
+    public static final int ALL = FUNCTION | PERIOD | FREQUENCY | CARRIER;
+
+    // Told about every actual change, with the bit of the field that changed
+    public interface Listener {
+        void operatorChanged(Operator op, int fields);
+    }
+
     private String function;
     private String period;
     private double frequency;
     private int id;
     private boolean isCarrier;
+    // Fields changed since the last takeDirty(); a new operator is dirty all over
+    private int dirty = ALL;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
 
     public Operator(int identification) {
         id = identification;
@@ -14,6 +31,18 @@ public class Operator {
         frequency = 200;          // default
         isCarrier = true;         // default to carrier
     }
+    // Same settings, no listeners and nothing dirty; a snapshot the editor can hand to
+    // another thread while it keeps changing the original
+    public Operator copy() {
+        Operator op = new Operator(id);
+        op.function = function;
+        op.period = period;
+        op.frequency = frequency;
+        op.isCarrier = isCarrier;
+        op.dirty = 0;
+        return op;
+    }
+
     // Getters
     public int getId() { return id; }
     public String getFunction() { return function; }
@@ -21,10 +50,51 @@ public class Operator {
     public double getFrequency() { return frequency; }
     public boolean isCarrier() { return isCarrier; }
 
-    // Setters
-    public void setFunction(String f) { function = f; }
-    public void setPeriod(String p) { period = p; }
-    public void setFrequency(double f) { frequency = f; }
+    // Setters, setting the current value again is not a change
+    public void setFunction(String f) {
+        if (f.equals(function)) return;
+        function = f;
+        changed(FUNCTION);
+    }
+
+    public void setPeriod(String p) {
+        if (p.equals(period)) return;
+        period = p;
+        changed(PERIOD);
+    }
+
+    public void setFrequency(double f) {
+        if (f == frequency) return;
+        frequency = f;
+        changed(FREQUENCY);
+    }
+
     public void setId(int id) { this.id = id; }
-    public void setCarrier(boolean carrier) { isCarrier = carrier; }
-}
\ No newline at end of file
+
+    public void setCarrier(boolean carrier) {
+        if (carrier == isCarrier) return;
+        isCarrier = carrier;
+        changed(CARRIER);
+    }
+
+    // Dirty tracking
+    public int getDirty() { return dirty; }
+
+    // Returns the fields changed since the last call and clears them
+    public int takeDirty() {
+        int fields = dirty;
+        dirty = 0;
+        return fields;
+    }
+
+    public void addListener(Listener l) { listeners.add(l); }
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    private void changed(int field) {
+        dirty |= field;
+        // Backwards, so a listener can remove itself
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            listeners.get(i).operatorChanged(this, field);
+        }
+    }
+}
@@ -78,7 +78,6 @@ public class OperatorPanel extends JPanel {
             typeToggle.setBackground(isCarrier ? carrierColor : modulatorColor);
             typeToggle.setToolTipText(isCarrier ? "Carrier (plays note)" : "Modulator (modifies carriers)");
             setFrequencyVisible(!isCarrier);
-            parent.globalRefresh();
         });
         leftHeader.add(typeToggle);
 
@@ -218,6 +217,7 @@ public class OperatorPanel extends JPanel {
         return operator;
     }
 
+    // The operator tells MainFrame about the change, only this canvas needs redrawing
     public void updateCanvas() {
         String func = functionField.getText();
         String per = periodField.getText();
@@ -226,11 +226,6 @@ public class OperatorPanel extends JPanel {
         operator.setPeriod(per);
 
         canvas.setFunction(func, per);
-        parent.globalRefresh();
-    }
-
-    public void refreshCanvas() {
-        canvas.setFunction(operator.getFunction(), operator.getPeriod());
     }
 
     private void updateFrequency() {
@@ -239,7 +234,6 @@ public class OperatorPanel extends JPanel {
             double freq = Double.parseDouble(text);
             operator.setFrequency(freq);
             frequencyField.setText((int)freq + " Hz");
-            parent.globalRefresh();
         } catch (NumberFormatException e) {
             frequencyField.setText((int)operator.getFrequency() + " Hz");
         }
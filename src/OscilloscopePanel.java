@@ -3,10 +3,38 @@ import java.awt.*;
 
 public class OscilloscopePanel extends JPanel {
     private short[] samples;
+    private TriggeredScope scope;
+    // Polyline scratch, two points (min, max) per column
+    private final int[] xPoints = new int[TriggeredScope.MAX_COLUMNS * 2];
+    private final int[] yPoints = new int[TriggeredScope.MAX_COLUMNS * 2];
+    // Time windows the mouse wheel steps through, in seconds
+    private static final double[] WINDOWS = {
+            0.001, 0.002, 0.005, 0.01, 0.02, 0.05, 0.1, 0.2, 0.5, 1, 2, 5
+    };
     private Color waveColor = new Color(80, 220, 140);
     private Color gridColor = new Color(50, 52, 58);
     private Color bgColor = new Color(25, 27, 32);
     private Color borderColor = new Color(60, 62, 68);
+    private Color centerLineColor = new Color(70, 72, 78);
+    private Color labelBgColor = new Color(35, 37, 42, 200);
+    private Color labelColor = new Color(180, 182, 188);
+    // Glow passes 1-3, pass n is 2n px wide at alpha 25n
+    private Color[] glowColors = {
+            new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), 25),
+            new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), 50),
+            new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), 75)
+    };
+
+    // Painting runs for every new trace, so it reuses these instead of allocating
+    private static final BasicStroke GRID_STROKE = new BasicStroke(0.5f);
+    private static final BasicStroke CENTER_STROKE = new BasicStroke(1.0f);
+    private static final BasicStroke[] GLOW_STROKES = {
+            new BasicStroke(2.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND),
+            new BasicStroke(4.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND),
+            new BasicStroke(6.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)
+    };
+    private static final BasicStroke WAVE_STROKE = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Font LABEL_FONT = new Font("SansSerif", Font.BOLD, 11);
 
     public OscilloscopePanel() {
         setBackground(bgColor);
@@ -15,6 +43,16 @@ public class OscilloscopePanel extends JPanel {
                 BorderFactory.createLineBorder(borderColor, 1),
                 BorderFactory.createEmptyBorder(10, 15, 10, 15)
         ));
+        setToolTipText("Scroll to change the time window");
+
+        addMouseWheelListener(e -> {
+            if (scope == null) return;
+            int current = 0;
+            while (current < WINDOWS.length - 1 && WINDOWS[current] < scope.getTimeWindow()) current++;
+            int next = Math.max(0, Math.min(WINDOWS.length - 1, current + e.getWheelRotation()));
+            scope.setTimeWindow(WINDOWS[next]);
+            repaint();
+        });
     }
 
     public void updateSamples(short[] newSamples) {
@@ -24,6 +62,18 @@ public class OscilloscopePanel extends JPanel {
         }
     }
 
+    // Shows the engine's output live, triggered. Repaints are requested only when there's
+    // a new trace, and painting reads that trace in place.
+    public void setTap(ScopeTap tap) {
+        if (scope != null) scope.stop();
+        scope = tap != null ? new TriggeredScope(tap, this::repaint) : null;
+        if (scope != null) scope.start();
+    }
+
+    public TriggeredScope getScope() {
+        return scope;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -42,7 +92,7 @@ public class OscilloscopePanel extends JPanel {
         g2d.setColor(gridColor);
 
         // Vertical grid lines
-        g2d.setStroke(new BasicStroke(0.5f));
+        g2d.setStroke(GRID_STROKE);
         for (int i = 0; i <= 10; i++) {
             int x = x0 + (i * width / 10);
             g2d.drawLine(x, y0, x, y0 + height);
@@ -52,53 +102,91 @@ public class OscilloscopePanel extends JPanel {
         for (int i = 0; i <= 4; i++) {
             int y = y0 + (i * height / 4);
             if (i == 2) {
-                g2d.setStroke(new BasicStroke(1.0f));
-                g2d.setColor(new Color(70, 72, 78));
+                g2d.setStroke(CENTER_STROKE);
+                g2d.setColor(centerLineColor);
             } else {
-                g2d.setStroke(new BasicStroke(0.5f));
+                g2d.setStroke(GRID_STROKE);
                 g2d.setColor(gridColor);
             }
             g2d.drawLine(x0, y, x0 + width, y);
         }
 
         // Draw waveform
-        if (samples != null && samples.length > 1) {
+        int numPoints = 0;
+        String label = "OSCILLOSCOPE";
+        if (scope != null) {
+            // Next sweep matches the current width, one column per pixel
+            scope.setColumns(width);
+            TriggeredScope.Trace trace = scope.acquire();
+            numPoints = traceToPoints(trace, x0, width, height, centerY);
+            label += "  " + formatWindow(scope.getTimeWindow())
+                    + (trace.getColumns() > 0 && !trace.isTriggered() ? "  AUTO" : "");
+        } else if (samples != null && samples.length > 1) {
+            numPoints = samplesToPoints(x0, width, height, centerY);
+        }
+
+        if (numPoints > 1) {
             // Glow effect
             for (int pass = 3; pass >= 1; pass--) {
-                int alpha = 25 * pass;
-                g2d.setColor(new Color(waveColor.getRed(), waveColor.getGreen(), waveColor.getBlue(), alpha));
-                g2d.setStroke(new BasicStroke(2.0f * pass, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                drawWaveform(g2d, x0, y0, width, height, centerY);
+                g2d.setColor(glowColors[pass - 1]);
+                g2d.setStroke(GLOW_STROKES[pass - 1]);
+                g2d.drawPolyline(xPoints, yPoints, numPoints);
             }
 
             // Main waveform line
             g2d.setColor(waveColor);
-            g2d.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            drawWaveform(g2d, x0, y0, width, height, centerY);
+            g2d.setStroke(WAVE_STROKE);
+            g2d.drawPolyline(xPoints, yPoints, numPoints);
         }
 
         // Draw label with subtle background
-        g2d.setColor(new Color(35, 37, 42, 200));
-        g2d.fillRoundRect(x0 + 5, y0 + 5, 95, 20, 4, 4);
+        g2d.setFont(LABEL_FONT);
+        int labelWidth = g2d.getFontMetrics().stringWidth(label) + 10;
+        g2d.setColor(labelBgColor);
+        g2d.fillRoundRect(x0 + 5, y0 + 5, labelWidth, 20, 4, 4);
 
-        g2d.setColor(new Color(180, 182, 188));
-        g2d.setFont(new Font("SansSerif", Font.BOLD, 11));
-        g2d.drawString("OSCILLOSCOPE", x0 + 10, y0 + 19);
+        g2d.setColor(labelColor);
+        g2d.drawString(label, x0 + 10, y0 + 19);
     }
 
-    private void drawWaveform(Graphics2D g2d, int x0, int y0, int width, int height, int centerY) {
-        int numSamples = samples.length;
-        double xScale = (double) width / numSamples;
+    // Each column becomes a vertical stroke from its min to its max; the polyline joining
+    // them fills in the steps between columns
+    private int traceToPoints(TriggeredScope.Trace trace, int x0, int width, int height, int centerY) {
+        int columns = trace.getColumns();
+        int filled = trace.getFilled();
+        double xScale = columns > 1 ? (double) width / (columns - 1) : 0;
         double yScale = (height / 2.0 - 10);
 
-        int[] xPoints = new int[numSamples];
-        int[] yPoints = new int[numSamples];
+        int n = 0;
+        for (int c = 0; c < filled; c++) {
+            int x = x0 + (int)(c * xScale);
+            int yMin = centerY - (int)((trace.getMin(c) / 32768.0) * yScale);
+            int yMax = centerY - (int)((trace.getMax(c) / 32768.0) * yScale);
+            // Alternate the direction so consecutive strokes join at the near end
+            boolean up = (c & 1) == 0;
+            xPoints[n] = x;
+            yPoints[n++] = up ? yMin : yMax;
+            xPoints[n] = x;
+            yPoints[n++] = up ? yMax : yMin;
+        }
+        return n;
+    }
+
+    private static String formatWindow(double seconds) {
+        if (seconds >= 1) return (int) Math.round(seconds) + " s";
+        return (int) Math.round(seconds * 1000) + " ms";
+    }
+
+    // Static samples from updateSamples, one point per sample up to the scratch size
+    private int samplesToPoints(int x0, int width, int height, int centerY) {
+        int numSamples = Math.min(samples.length, xPoints.length);
+        double xScale = (double) width / numSamples;
+        double yScale = (height / 2.0 - 10);
 
         for (int i = 0; i < numSamples; i++) {
             xPoints[i] = x0 + (int)(i * xScale);
             yPoints[i] = centerY - (int)((samples[i] / 32768.0) * yScale);
         }
-
-        g2d.drawPolyline(xPoints, yPoints, numSamples);
+        return numSamples;
     }
 }
\ No newline at end of file
@@ -0,0 +1,492 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+// Immutable, fully compiled snapshot of everything the audio thread needs:
+// operator evaluators, carrier flags, frequencies and the modulation routing.
+// The EDT builds a new one on every change and publishes it to Synthesis,
+// the audio thread only ever reads it.
+//
+// The mod matrix is compiled into a sparse routing graph: operators are put in
+// topological order so any chain (4 -> 3 -> 2 -> 1) renders in one pass, and each
+// operator only visits its own non-zero inputs. Routes that close a cycle are
+// marked as feedback and read the source's output from one sample earlier. Building
+// it takes time in operators plus routes, not operators squared.
+//
+// Edits don't need a full compile: withOperator, withOperatorAdded/Removed, withRoute and
+// withMatrix derive a new snapshot that shares everything the edit didn't touch.
+//
+// Route depths are targets; Synthesis ramps the depth it plays toward them. A route
+// that's removed stays in the patch with target 0, so it fades out instead of dropping.
+// getSettled() is the same patch without those fading routes, built up front so the
+// engine can switch to it once they're silent without compiling anything itself.
+public final class Patch {
+    public static final Patch EMPTY = new Patch(new DoubleUnaryOperator[0], new Wavetable[0],
+            new boolean[0], new double[0], 0, new int[0], new int[0], new double[0]);
+
+    private final int numOps;
+    private final DoubleUnaryOperator[] functions;
+    private final Wavetable[] wavetables;
+    private final boolean[] carrier;
+    private final double[] frequencies;
+    // Carriers in index order, and each operator's share of the voice output (1 / carriers, 0 for modulators)
+    private final int[] carrierIndex;
+    private final double[] outputGain;
+
+    // Render order and routes, inputs of op are inputSource/Depth[inputStart[op] .. inputStart[op + 1])
+    // in source order
+    private final int[] order;
+    private final int[] inputStart;
+    private final int[] inputSource;
+    private final double[] inputDepth;
+    private final boolean[] inputDelayed;
+    private final boolean hasFeedback;
+    // This patch without its fading routes, or the patch itself when it has none
+    private final Patch settled;
+
+    // Routes are srcs[i] -> dsts[i] at depths[i] for i < count, in any order and without
+    // duplicates or self-routes; depth 0 is a route that's fading out
+    private Patch(DoubleUnaryOperator[] funcs, Wavetable[] tables, boolean[] carriers, double[] freqs,
+                  int count, int[] srcs, int[] dsts, double[] depths) {
+        numOps = funcs.length;
+        functions = funcs;
+        wavetables = tables;
+        carrier = carriers;
+        frequencies = freqs;
+        carrierIndex = carrierIndices(carriers);
+        outputGain = outputGains(carriers, carrierIndex.length);
+
+        // Counting sort by source, then a stable one by destination: each operator's
+        // inputs end up together and in source order
+        int[] bySource = new int[count];
+        int[] next = new int[numOps + 1];
+        for (int i = 0; i < count; i++) {
+            next[srcs[i] + 1]++;
+        }
+        for (int op = 0; op < numOps; op++) {
+            next[op + 1] += next[op];
+        }
+        for (int i = 0; i < count; i++) {
+            bySource[next[srcs[i]]++] = i;
+        }
+        inputStart = new int[numOps + 1];
+        for (int i = 0; i < count; i++) {
+            inputStart[dsts[i] + 1]++;
+        }
+        for (int op = 0; op < numOps; op++) {
+            inputStart[op + 1] += inputStart[op];
+        }
+        inputSource = new int[count];
+        inputDepth = new double[count];
+        int[] routeTarget = new int[count];
+        System.arraycopy(inputStart, 0, next, 0, numOps + 1);
+        for (int k = 0; k < count; k++) {
+            int i = bySource[k];
+            int r = next[dsts[i]]++;
+            inputSource[r] = srcs[i];
+            inputDepth[r] = depths[i];
+            routeTarget[r] = dsts[i];
+        }
+
+        // Each operator's outgoing routes in destination order, for the search below
+        int[] outStart = new int[numOps + 1];
+        for (int r = 0; r < count; r++) {
+            outStart[inputSource[r] + 1]++;
+        }
+        for (int op = 0; op < numOps; op++) {
+            outStart[op + 1] += outStart[op];
+        }
+        int[] outRoute = new int[count];
+        System.arraycopy(outStart, 0, next, 0, numOps + 1);
+        for (int r = 0; r < count; r++) {
+            outRoute[next[inputSource[r]]++] = r;
+        }
+
+        // Depth-first search from each operator in index order; reverse post-order is a
+        // topological order once the edges back onto the search stack are taken out
+        order = new int[numOps];
+        inputDelayed = new boolean[count];
+        int[] state = new int[numOps]; // 0 = unvisited, 1 = on stack, 2 = done
+        int[] position = {numOps};
+        for (int op = 0; op < numOps; op++) {
+            if (state[op] == 0) visit(op, outStart, outRoute, routeTarget, state, position);
+        }
+
+        boolean feedback = false;
+        for (boolean delayed : inputDelayed) {
+            feedback |= delayed;
+        }
+        hasFeedback = feedback;
+        settled = settle();
+    }
+
+    // Same routing as base, which is immutable and can be shared
+    private Patch(Patch base, DoubleUnaryOperator[] funcs, Wavetable[] tables, boolean[] carriers, double[] freqs) {
+        numOps = funcs.length;
+        functions = funcs;
+        wavetables = tables;
+        carrier = carriers;
+        frequencies = freqs;
+        carrierIndex = carrierIndices(carriers);
+        outputGain = outputGains(carriers, carrierIndex.length);
+        order = base.order;
+        inputStart = base.inputStart;
+        inputSource = base.inputSource;
+        inputDepth = base.inputDepth;
+        inputDelayed = base.inputDelayed;
+        hasFeedback = base.hasFeedback;
+        settled = base.settled == base ? this : new Patch(base.settled, funcs, tables, carriers, freqs);
+    }
+
+    // Same operators and routes as base with other depths (indexed like base's routes)
+    private Patch(Patch base, double[] depths) {
+        numOps = base.numOps;
+        functions = base.functions;
+        wavetables = base.wavetables;
+        carrier = base.carrier;
+        frequencies = base.frequencies;
+        carrierIndex = base.carrierIndex;
+        outputGain = base.outputGain;
+        order = base.order;
+        inputStart = base.inputStart;
+        inputSource = base.inputSource;
+        inputDepth = depths;
+        inputDelayed = base.inputDelayed;
+        hasFeedback = base.hasFeedback;
+        settled = settle();
+    }
+
+    // The routes with a target above 0, compiled on their own; only when there are others
+    private Patch settle() {
+        int count = 0;
+        for (double depth : inputDepth) {
+            if (depth != 0) count++;
+        }
+        if (count == inputDepth.length) return this;
+
+        int[] srcs = new int[count];
+        int[] dsts = new int[count];
+        double[] depths = new double[count];
+        int i = 0;
+        for (int dst = 0; dst < numOps; dst++) {
+            for (int r = inputStart[dst]; r < inputStart[dst + 1]; r++) {
+                if (inputDepth[r] == 0) continue;
+                srcs[i] = inputSource[r];
+                dsts[i] = dst;
+                depths[i] = inputDepth[r];
+                i++;
+            }
+        }
+        return new Patch(functions, wavetables, carrier, frequencies, count, srcs, dsts, depths);
+    }
+
+    private static int[] carrierIndices(boolean[] carriers) {
+        int count = 0;
+        for (boolean c : carriers) {
+            if (c) count++;
+        }
+        int[] indices = new int[count];
+        for (int op = 0, k = 0; op < carriers.length; op++) {
+            if (carriers[op]) indices[k++] = op;
+        }
+        return indices;
+    }
+
+    private static double[] outputGains(boolean[] carriers, int count) {
+        double[] gains = new double[carriers.length];
+        for (int op = 0; op < carriers.length; op++) {
+            gains[op] = carriers[op] ? 1.0 / count : 0;
+        }
+        return gains;
+    }
+
+    private void visit(int src, int[] outStart, int[] outRoute, int[] routeTarget, int[] state, int[] position) {
+        state[src] = 1;
+        for (int e = outStart[src]; e < outStart[src + 1]; e++) {
+            int r = outRoute[e];
+            int dst = routeTarget[r];
+            if (state[dst] == 1) {
+                inputDelayed[r] = true; // closes a cycle
+            } else if (state[dst] == 0) {
+                visit(dst, outStart, outRoute, routeTarget, state, position);
+            }
+        }
+        state[src] = 2;
+        order[--position[0]] = src;
+    }
+
+    // Compiles the operator list and matrix (0-10 per cell, fractions allowed) into a new snapshot.
+    // Wavetables from the previous patch are reused when function and period are unchanged,
+    // and its routes that aren't in the matrix fade out.
+    public static Patch compile(List<Operator> ops, float[][] matrix, Patch previous,
+                                boolean useWavetables, int wavetableSize, int interpolation) {
+        if (ops == null || ops.isEmpty()) return EMPTY;
+
+        int n = ops.size();
+        DoubleUnaryOperator[] funcs = new DoubleUnaryOperator[n];
+        Wavetable[] tables = new Wavetable[n];
+        boolean[] carriers = new boolean[n];
+        double[] freqs = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            Operator op = ops.get(i);
+            carriers[i] = op.isCarrier();
+            freqs[i] = op.getFrequency();
+            compileFunction(op, i, previous, funcs, tables, useWavetables, wavetableSize, interpolation);
+        }
+
+        return withRoutesOf(funcs, tables, carriers, freqs, matrix, previous);
+    }
+
+    // Every operator compiled again, e.g. after the wavetable settings changed. The routing
+    // stays if the operator count is the same, otherwise there's no modulation.
+    public Patch withOperators(List<Operator> ops, boolean useWavetables, int wavetableSize, int interpolation) {
+        if (ops == null || ops.isEmpty()) return EMPTY;
+        int n = ops.size();
+        DoubleUnaryOperator[] funcs = new DoubleUnaryOperator[n];
+        Wavetable[] tables = new Wavetable[n];
+        boolean[] carriers = new boolean[n];
+        double[] freqs = new double[n];
+        for (int i = 0; i < n; i++) {
+            Operator op = ops.get(i);
+            carriers[i] = op.isCarrier();
+            freqs[i] = op.getFrequency();
+            compileFunction(op, i, this, funcs, tables, useWavetables, wavetableSize, interpolation);
+        }
+        if (n == numOps) {
+            return new Patch(this, funcs, tables, carriers, freqs);
+        }
+        return new Patch(funcs, tables, carriers, freqs, 0, new int[0], new int[0], new double[0]);
+    }
+
+    // This patch with one operator's changed fields (Operator.FUNCTION etc.) taken over.
+    // Only a function or period change compiles anything; routing is shared.
+    public Patch withOperator(int index, Operator op, int fields,
+                              boolean useWavetables, int wavetableSize, int interpolation) {
+        DoubleUnaryOperator[] funcs = functions.clone();
+        Wavetable[] tables = wavetables.clone();
+        boolean[] carriers = carrier.clone();
+        double[] freqs = frequencies.clone();
+        carriers[index] = op.isCarrier();
+        freqs[index] = op.getFrequency();
+        if ((fields & (Operator.FUNCTION | Operator.PERIOD)) != 0) {
+            tables[index] = null;
+            compileFunction(op, index, this, funcs, tables, useWavetables, wavetableSize, interpolation);
+        }
+        return new Patch(this, funcs, tables, carriers, freqs);
+    }
+
+    // This patch with a new last operator that has no routes yet. Only that operator is
+    // compiled, the others and the routing are copied over.
+    public Patch withOperatorAdded(Operator op, boolean useWavetables, int wavetableSize, int interpolation) {
+        int n = numOps + 1;
+        DoubleUnaryOperator[] funcs = Arrays.copyOf(functions, n);
+        Wavetable[] tables = Arrays.copyOf(wavetables, n);
+        boolean[] carriers = Arrays.copyOf(carrier, n);
+        double[] freqs = Arrays.copyOf(frequencies, n);
+        carriers[numOps] = op.isCarrier();
+        freqs[numOps] = op.getFrequency();
+        compileFunction(op, numOps, this, funcs, tables, useWavetables, wavetableSize, interpolation);
+
+        // Indices don't change; depths start at their targets after a structural change,
+        // so routes still fading out would just drop and are left out
+        Patch routes = settled;
+        int count = routes.inputSource.length;
+        int[] srcs = new int[count];
+        int[] dsts = new int[count];
+        double[] depths = new double[count];
+        routes.routeList(srcs, dsts, depths);
+        return new Patch(funcs, tables, carriers, freqs, count, srcs, dsts, depths);
+    }
+
+    // This patch without operator index and its routes; the operators after it move down one
+    public Patch withOperatorRemoved(int index) {
+        if (index < 0 || index >= numOps) return this;
+        if (numOps == 1) return EMPTY;
+        int n = numOps - 1;
+        DoubleUnaryOperator[] funcs = new DoubleUnaryOperator[n];
+        Wavetable[] tables = new Wavetable[n];
+        boolean[] carriers = new boolean[n];
+        double[] freqs = new double[n];
+        for (int op = 0, k = 0; op < numOps; op++) {
+            if (op == index) continue;
+            funcs[k] = functions[op];
+            tables[k] = wavetables[op];
+            carriers[k] = carrier[op];
+            freqs[k] = frequencies[op];
+            k++;
+        }
+
+        int count = 0;
+        int[] srcs = new int[inputSource.length];
+        int[] dsts = new int[inputSource.length];
+        double[] depths = new double[inputSource.length];
+        for (int dst = 0; dst < numOps; dst++) {
+            if (dst == index) continue;
+            for (int r = inputStart[dst]; r < inputStart[dst + 1]; r++) {
+                int src = inputSource[r];
+                // Fading routes are dropped, as in withOperatorAdded
+                if (src == index || inputDepth[r] == 0) continue;
+                srcs[count] = src > index ? src - 1 : src;
+                dsts[count] = dst > index ? dst - 1 : dst;
+                depths[count] = inputDepth[r];
+                count++;
+            }
+        }
+        return new Patch(funcs, tables, carriers, freqs, count, srcs, dsts, depths);
+    }
+
+    // This patch with new routing; the compiled operators are shared. Routes that aren't
+    // in the matrix any more fade out.
+    public Patch withMatrix(float[][] matrix) {
+        return withRoutesOf(functions, wavetables, carrier, frequencies, matrix, this);
+    }
+
+    // This patch with one matrix cell (0-10) changed. A depth change is a copy of the
+    // depths; setting a route to 0 keeps it, fading out, so only a new route rebuilds
+    // the routing.
+    public Patch withRoute(int src, int dst, float depth) {
+        if (src == dst || src < 0 || dst < 0 || src >= numOps || dst >= numOps) return this;
+        double target = depth / 10.0; // scale mod index
+        for (int r = inputStart[dst]; r < inputStart[dst + 1]; r++) {
+            if (inputSource[r] != src) continue;
+            if (inputDepth[r] == target) return this;
+            double[] depths = inputDepth.clone();
+            depths[r] = target;
+            return new Patch(this, depths);
+        }
+        if (target == 0) return this;
+
+        int count = inputSource.length;
+        int[] srcs = new int[count + 1];
+        int[] dsts = new int[count + 1];
+        double[] depths = new double[count + 1];
+        routeList(srcs, dsts, depths);
+        srcs[count] = src;
+        dsts[count] = dst;
+        depths[count] = target;
+        return new Patch(functions, wavetables, carrier, frequencies, count + 1, srcs, dsts, depths);
+    }
+
+    // Routing from a matrix (0-10 per cell) for these operators, plus previous's routes the
+    // matrix doesn't have with target 0. A matrix that doesn't match the operator count
+    // means no modulation.
+    private static Patch withRoutesOf(DoubleUnaryOperator[] funcs, Wavetable[] tables, boolean[] carriers,
+                                      double[] freqs, float[][] matrix, Patch previous) {
+        int n = funcs.length;
+        boolean valid = matrix != null && matrix.length == n;
+        for (int src = 0; valid && src < n; src++) {
+            valid = matrix[src].length == n;
+        }
+        boolean fade = previous != null && previous.numOps == n;
+
+        int count = 0;
+        for (int src = 0; valid && src < n; src++) {
+            for (int dst = 0; dst < n; dst++) {
+                if (src != dst && matrix[src][dst] != 0) count++;
+            }
+        }
+        int fading = 0;
+        for (int dst = 0; fade && dst < n; dst++) {
+            for (int r = previous.inputStart[dst]; r < previous.inputStart[dst + 1]; r++) {
+                if (!valid || matrix[previous.inputSource[r]][dst] == 0) fading++;
+            }
+        }
+
+        int[] srcs = new int[count + fading];
+        int[] dsts = new int[count + fading];
+        double[] depths = new double[count + fading];
+        int i = 0;
+        for (int src = 0; valid && src < n; src++) {
+            for (int dst = 0; dst < n; dst++) {
+                if (src != dst && matrix[src][dst] != 0) {
+                    srcs[i] = src;
+                    dsts[i] = dst;
+                    depths[i] = matrix[src][dst] / 10.0; // scale mod index
+                    i++;
+                }
+            }
+        }
+        for (int dst = 0; fade && dst < n; dst++) {
+            for (int r = previous.inputStart[dst]; r < previous.inputStart[dst + 1]; r++) {
+                int src = previous.inputSource[r];
+                if (valid && matrix[src][dst] != 0) continue;
+                srcs[i] = src;
+                dsts[i] = dst;
+                i++; // depth 0
+            }
+        }
+        return new Patch(funcs, tables, carriers, freqs, i, srcs, dsts, depths);
+    }
+
+    // Copies this patch's routes into the lists, returns how many there are
+    private int routeList(int[] srcs, int[] dsts, double[] depths) {
+        int i = 0;
+        for (int dst = 0; dst < numOps; dst++) {
+            for (int r = inputStart[dst]; r < inputStart[dst + 1]; r++) {
+                srcs[i] = inputSource[r];
+                dsts[i] = dst;
+                depths[i] = inputDepth[r];
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static void compileFunction(Operator op, int i, Patch previous, DoubleUnaryOperator[] funcs, Wavetable[] tables,
+                                        boolean useWavetables, int wavetableSize, int interpolation) {
+        Wavetable table = useWavetables && previous != null ? previous.findWavetable(op, wavetableSize) : null;
+        if (table != null) {
+            tables[i] = table.withInterpolation(interpolation);
+            funcs[i] = tables[i];
+            return;
+        }
+
+        // Falls back to mXparser for unsupported expressions; compiled once per distinct text
+        DoubleUnaryOperator func = ExpressionCache.shared().compile(op.getFunction());
+        if (useWavetables) {
+            tables[i] = Wavetable.render(op.getFunction(), op.getPeriod(), func, wavetableSize, interpolation);
+        }
+        // Render loop reads from the table when there is one. An mXparser fallback gets its
+        // own parsed Function here, so the audio thread never builds one after a swap.
+        funcs[i] = tables[i] != null ? tables[i] : ExpressionCompiler.ownCopy(func);
+    }
+
+    private Wavetable findWavetable(Operator op, int size) {
+        for (Wavetable table : wavetables) {
+            if (table != null && table.matches(op.getFunction(), op.getPeriod(), size)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    // Getters
+    public int getNumOperators() { return numOps; }
+    public DoubleUnaryOperator getFunction(int op) { return functions[op]; }
+    public boolean isCarrier(int op) { return carrier[op]; }
+    public double getFrequency(int op) { return frequencies[op]; }
+    public int getCarrierCount() { return carrierIndex.length; }
+    public int getCarrier(int k) { return carrierIndex[k]; }
+    public double getOutputGain(int op) { return outputGain[op]; }
+    public int getOrder(int position) { return order[position]; }
+    public int getInputStart(int op) { return inputStart[op]; }
+    public int getInputEnd(int op) { return inputStart[op + 1]; }
+    public int getInputSource(int route) { return inputSource[route]; }
+    public double getInputDepth(int route) { return inputDepth[route]; }
+    public boolean isInputDelayed(int route) { return inputDelayed[route]; }
+    public int getRouteCount() { return inputSource.length; }
+    // True when the routing has at least one cycle and needs per-sample rendering
+    public boolean hasFeedback() { return hasFeedback; }
+    // This patch without the routes that are fading out (target depth 0), for the engine
+    // to switch to once they're silent. The patch itself when there are none.
+    public Patch getSettled() { return settled; }
+
+    // True when no operator goes through mXparser, i.e. rendering this patch allocates nothing
+    public boolean isAllocationFree() {
+        for (DoubleUnaryOperator func : functions) {
+            if (ExpressionCompiler.isInterpreted(func)) return false;
+        }
+        return true;
+    }
+}
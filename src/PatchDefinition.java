@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Properties;
+
+// A patch stored as a plain properties file, e.g.
+//
+//   operators=2
+//   op.1.function=sin(t)
+//   op.1.period=2*pi
+//   op.1.frequency=200
+//   op.1.carrier=true
+//   op.2.function=sin(t)
+//   op.2.frequency=440
+//   op.2.carrier=false
+//   matrix.2.1=5.5        (operator 2 modulates operator 1, depth 0-10)
+//
+// Missing operator fields keep the Operator defaults. Files are UTF-8, and a frequency
+// or depth that isn't a finite number is an error.
+public class PatchDefinition {
+    private final String name;
+    private final ArrayList<Operator> operators;
+    private final float[][] matrix;
+
+    public PatchDefinition(String name, ArrayList<Operator> operators, float[][] matrix) {
+        this.name = name;
+        this.operators = operators;
+        this.matrix = matrix;
+    }
+
+    // Getters
+    public String getName() { return name; }
+    public ArrayList<Operator> getOperators() { return operators; }
+    public float[][] getMatrix() { return matrix; }
+
+    public static PatchDefinition load(File file) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+
+        String name = file.getName();
+        if (name.contains(".")) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+
+        int numOps;
+        try {
+            numOps = Integer.parseInt(props.getProperty("operators", "0").trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ": bad operator count");
+        }
+        if (numOps <= 0) {
+            throw new IOException(file + ": no operators");
+        }
+
+        ArrayList<Operator> ops = new ArrayList<>();
+        for (int i = 1; i <= numOps; i++) {
+            Operator op = new Operator(i);
+            String prefix = "op." + i + ".";
+            op.setFunction(props.getProperty(prefix + "function", op.getFunction()).trim());
+            op.setPeriod(props.getProperty(prefix + "period", op.getPeriod()).trim());
+            op.setCarrier(Boolean.parseBoolean(props.getProperty(prefix + "carrier", String.valueOf(op.isCarrier())).trim()));
+            double frequency;
+            try {
+                frequency = Double.parseDouble(props.getProperty(prefix + "frequency", String.valueOf(op.getFrequency())).trim());
+            } catch (NumberFormatException e) {
+                frequency = Double.NaN;
+            }
+            if (!Double.isFinite(frequency)) {
+                throw new IOException(file + ": bad frequency for operator " + i);
+            }
+            op.setFrequency(frequency);
+            ops.add(op);
+        }
+
+        float[][] matrix = new float[numOps][numOps];
+        for (int src = 1; src <= numOps; src++) {
+            for (int dst = 1; dst <= numOps; dst++) {
+                String value = props.getProperty("matrix." + src + "." + dst);
+                if (value == null || src == dst) continue;
+                float depth;
+                try {
+                    depth = Float.parseFloat(value.trim());
+                } catch (NumberFormatException e) {
+                    depth = Float.NaN;
+                }
+                // NaN would get through the clamp below
+                if (!Float.isFinite(depth)) {
+                    throw new IOException(file + ": bad matrix value " + src + "." + dst);
+                }
+                // Clamp to 0-10 like the matrix panel
+                matrix[src - 1][dst - 1] = Math.max(0, Math.min(10, depth));
+            }
+        }
+
+        return new PatchDefinition(name, ops, matrix);
+    }
+
+    public void save(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("operators=" + operators.size());
+            for (int i = 0; i < operators.size(); i++) {
+                Operator op = operators.get(i);
+                String prefix = "op." + (i + 1) + ".";
+                out.println(prefix + "function=" + op.getFunction());
+                out.println(prefix + "period=" + op.getPeriod());
+                out.println(prefix + "frequency=" + op.getFrequency());
+                out.println(prefix + "carrier=" + op.isCarrier());
+            }
+            if (matrix == null) return;
+            for (int src = 0; src < matrix.length; src++) {
+                for (int dst = 0; dst < matrix[src].length; dst++) {
+                    if (matrix[src][dst] != 0) {
+                        out.println("matrix." + (src + 1) + "." + (dst + 1) + "=" + matrix[src][dst]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// Fixed-size ring of 16-bit samples between exactly one producer thread (the renderer)
+// and one consumer thread (the line writer). Neither side locks or allocates: each
+// side owns its own position and only reads the other's, so two volatile counters
+// are all the synchronization there is.
+public class PcmRingBuffer {
+    private final short[] data;
+    private final int mask;
+
+    // Total samples ever written/read; the difference is the fill level
+    private volatile long writePos = 0;
+    private volatile long readPos = 0;
+
+    // Capacity is rounded up to a power of two
+    public PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        data = new short[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    // Samples waiting to be read; exact from either side, a snapshot from anywhere else
+    public int size() {
+        return (int) (writePos - readPos);
+    }
+
+    public int remaining() {
+        return data.length - size();
+    }
+
+    // ========== PRODUCER ==========
+
+    // Copies as much of src as fits and returns how many samples that was
+    public int write(short[] src, int offset, int length) {
+        long w = writePos;
+        int n = Math.min(length, data.length - (int) (w - readPos));
+        int start = (int) (w & mask);
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(src, offset, data, start, first);
+        System.arraycopy(src, offset + first, data, 0, n - first);
+        writePos = w + n; // publishes the samples
+        return n;
+    }
+
+    // ========== CONSUMER ==========
+
+    // Copies up to length samples into dst and returns how many there were
+    public int read(short[] dst, int offset, int length) {
+        long r = readPos;
+        int n = Math.min(length, (int) (writePos - r));
+        int start = (int) (r & mask);
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(data, start, dst, offset, first);
+        System.arraycopy(data, 0, dst, offset + first, n - first);
+        readPos = r + n; // hands the space back to the producer
+        return n;
+    }
+
+    // Drops everything waiting; consumer side only
+    public void clear() {
+        readPos = writePos;
+    }
+}
@@ -0,0 +1,35 @@
+// The data-parallel stages of the render loop. Operator functions are opaque
+// and still evaluated one sample at a time; everything around them goes through here.
+public interface RenderKernel {
+
+    // Fills dst with the running phase (in cycles) and returns the phase after the block
+    double phaseRamp(double[] dst, double phase, double inc, int frames);
+
+    void clear(double[] dst, int frames);
+
+    void add(double[] dst, double[] src, int frames);
+
+    void multiplyAdd(double[] dst, double[] src, double gain, int frames);
+
+    // Like multiplyAdd with a gain that moves linearly, gain + i * step at frame i
+    void multiplyAddRamp(double[] dst, double[] src, double gain, double step, int frames);
+
+    // Scales by gain, clips to full scale and converts to 16-bit samples
+    void toPcm(double[] src, double gain, short[] dst, int frames);
+
+    String getName();
+
+    // Picks the Vector API kernel when the JVM was started with --add-modules jdk.incubator.vector
+    // and src-vector was compiled in, otherwise (or with -Dfmsynth.kernel=scalar) the plain scalar loops
+    static RenderKernel create() {
+        boolean forceScalar = "scalar".equalsIgnoreCase(System.getProperty("fmsynth.kernel"));
+        if (!forceScalar && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (RenderKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the scalar kernel
+            }
+        }
+        return new ScalarKernel();
+    }
+}
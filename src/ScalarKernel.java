@@ -0,0 +1,48 @@
+// Plain loops, used when the Vector API isn't available. This is the reference
+// the vector kernel is checked against.
+public class ScalarKernel implements RenderKernel {
+
+    public double phaseRamp(double[] dst, double phase, double inc, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[i] = phase;
+            phase += inc;
+            if (phase > 1) phase -= 1;
+        }
+        return phase;
+    }
+
+    public void clear(double[] dst, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[i] = 0;
+        }
+    }
+
+    public void add(double[] dst, double[] src, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[i] += src[i];
+        }
+    }
+
+    public void multiplyAdd(double[] dst, double[] src, double gain, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[i] += src[i] * gain;
+        }
+    }
+
+    public void multiplyAddRamp(double[] dst, double[] src, double gain, double step, int frames) {
+        for (int i = 0; i < frames; i++) {
+            dst[i] += src[i] * (gain + i * step);
+        }
+    }
+
+    public void toPcm(double[] src, double gain, short[] dst, int frames) {
+        for (int i = 0; i < frames; i++) {
+            double out = Math.max(-1, Math.min(1, src[i] * gain));
+            dst[i] = (short)(out * Short.MAX_VALUE);
+        }
+    }
+
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.locks.LockSupport;
+
+// Continuous copy of the engine's output for the scope. The audio thread pushes every
+// block into a ring and unparks the scope's own thread, which does all the analysis
+// off both the audio thread and the EDT. If that thread falls behind, the audio thread
+// drops samples rather than wait.
+//
+// One writer thread (the audio thread) and one reader thread (the notifier) only.
+public class ScopeTap {
+    private final PcmRingBuffer ring;
+    private final int sampleRate;
+
+    // Notifier thread, woken after every block
+    private volatile Thread waiter;
+
+    public ScopeTap(int capacity, int sampleRate) {
+        ring = new PcmRingBuffer(capacity);
+        this.sampleRate = sampleRate;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    // ========== WRITER ==========
+
+    public void write(short[] src, int length) {
+        Thread w = waiter;
+        if (w == null) return; // nobody listening
+        ring.write(src, 0, length);
+        LockSupport.unpark(w);
+    }
+
+    // ========== READER ==========
+
+    public int read(short[] dst, int offset, int length) {
+        return ring.read(dst, offset, length);
+    }
+
+    // Runs listener on a daemon thread whenever new samples have arrived; the listener
+    // reads them with read(). Anything written before the thread started is skipped.
+    public void startNotifier(Runnable listener) {
+        Thread thread = new Thread(() -> {
+            ring.clear();
+            while (waiter == Thread.currentThread()) {
+                LockSupport.park(this);
+                if (ring.size() > 0) listener.run();
+            }
+        }, "FMSynth scope");
+        thread.setDaemon(true);
+        waiter = thread;
+        thread.start();
+    }
+
+    public void stopNotifier() {
+        Thread thread = waiter;
+        waiter = null;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.Arrays;
+
+// Spectrum of the engine's output, computed on the tap's notifier thread. About 30 times
+// a second the newest FFT-size samples are Hann-windowed and transformed; the power is
+// averaged over frames, peaks are held and slowly released, and the bins are folded
+// into one level per pixel column on a log (or linear) frequency axis. The EDT only
+// draws the finished columns.
+//
+// Buffers are only reallocated when the FFT size changes. Time spent per frame goes
+// to EngineMetrics as the analyzer's load.
+public class SpectrumAnalyzer {
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 16384;
+    public static final int MAX_COLUMNS = 4096;
+    public static final double MIN_FREQUENCY = 20;
+    public static final float FLOOR_DB = -120;
+
+    private static final int FRAMES_PER_SECOND = 30;
+    // Held peaks fall back at this rate
+    private static final double PEAK_RELEASE_DB_PER_SECOND = 12;
+
+    // One analysis, levels in dB relative to a full-scale sine
+    public static final class Frame {
+        private final float[] level = new float[MAX_COLUMNS];
+        private final float[] peak = new float[MAX_COLUMNS];
+        private int columns = 0;
+        private int fftSize;
+        private boolean logFrequency;
+        private double minFrequency;
+        private double maxFrequency;
+
+        public int getColumns() { return columns; }
+        public float getLevel(int column) { return level[column]; }
+        public float getPeak(int column) { return peak[column]; }
+        public int getFftSize() { return fftSize; }
+        public boolean isLogFrequency() { return logFrequency; }
+        public double getMinFrequency() { return minFrequency; }
+        public double getMaxFrequency() { return maxFrequency; }
+    }
+
+    private final ScopeTap tap;
+    private final EngineMetrics metrics;
+    private final Runnable onFrame;
+    private final TripleBuffer<Frame> frames = new TripleBuffer<>(new Frame(), new Frame(), new Frame());
+
+    // Settings, picked up at the next frame
+    private volatile int sizeSetting = 4096;
+    private volatile int columnSetting = 512;
+    private volatile double averaging = 0.5;
+    private volatile boolean peakHold = true;
+    private volatile boolean logFrequency = true;
+    private volatile boolean peakResetRequested = false;
+
+    // Analysis state, notifier thread only
+    private final short[] chunk = new short[4096];
+    private final short[] history = new short[MAX_SIZE];
+    private int historyPos = 0;
+    private int pending = 0;
+    private FFT fft;
+    private double[] window;
+    private double[] input;
+    private double[] power;
+    private double[] average;
+    private double[] peakPower;
+    private double fullScale;
+
+    // metrics may be null; onFrame runs on the notifier thread after each frame, e.g. repaint()
+    public SpectrumAnalyzer(ScopeTap spectrumTap, EngineMetrics metrics, Runnable onFrame) {
+        tap = spectrumTap;
+        this.metrics = metrics;
+        this.onFrame = onFrame;
+    }
+
+    public void start() {
+        tap.startNotifier(this::process);
+    }
+
+    public void stop() {
+        tap.stopNotifier();
+    }
+
+    // ========== SETTINGS (any thread) ==========
+
+    // Rounded to a power of two between MIN_SIZE and MAX_SIZE
+    public void setFftSize(int size) {
+        int clamped = Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+        sizeSetting = Integer.highestOneBit(clamped);
+    }
+
+    public int getFftSize() {
+        return sizeSetting;
+    }
+
+    // Usually the plot width in pixels
+    public void setColumns(int count) {
+        columnSetting = Math.max(1, Math.min(MAX_COLUMNS, count));
+    }
+
+    // Weight of the previous frames, 0 = no averaging
+    public void setAveraging(double weight) {
+        averaging = Math.max(0, Math.min(0.99, weight));
+    }
+
+    public double getAveraging() {
+        return averaging;
+    }
+
+    public void setPeakHold(boolean enabled) {
+        peakHold = enabled;
+        peakResetRequested = true;
+    }
+
+    public boolean isPeakHold() {
+        return peakHold;
+    }
+
+    public void setLogFrequency(boolean enabled) {
+        logFrequency = enabled;
+    }
+
+    public boolean isLogFrequency() {
+        return logFrequency;
+    }
+
+    public void resetPeaks() {
+        peakResetRequested = true;
+    }
+
+    // ========== READER (EDT) ==========
+
+    // Latest frame; stays valid until the next call
+    public Frame acquire() {
+        return frames.acquire();
+    }
+
+    // ========== NOTIFIER THREAD ==========
+
+    // Drains the tap and analyzes once enough new samples are in; returns true if a frame was published
+    public boolean process() {
+        int n;
+        while ((n = tap.read(chunk, 0, chunk.length)) > 0) {
+            for (int i = 0; i < n; i++) {
+                history[historyPos] = chunk[i];
+                historyPos = (historyPos + 1) & (MAX_SIZE - 1);
+            }
+            pending += n;
+        }
+
+        if (pending < tap.getSampleRate() / FRAMES_PER_SECOND) return false;
+        long start = System.nanoTime();
+        analyze();
+        if (metrics != null) {
+            metrics.recordAnalysis(System.nanoTime() - start, pending);
+        }
+        pending = 0;
+        if (onFrame != null) {
+            onFrame.run();
+        }
+        return true;
+    }
+
+    private void analyze() {
+        int size = sizeSetting;
+        if (fft == null || fft.getSize() != size) {
+            resize(size);
+        }
+
+        // Newest size samples, oldest first
+        int start = historyPos - size;
+        for (int i = 0; i < size; i++) {
+            input[i] = history[(start + i) & (MAX_SIZE - 1)] * window[i];
+        }
+        fft.powerSpectrum(input, power);
+
+        double weight = averaging;
+        boolean hold = peakHold;
+        if (peakResetRequested) {
+            peakResetRequested = false;
+            Arrays.fill(peakPower, 0);
+        }
+        double release = Math.pow(10, -PEAK_RELEASE_DB_PER_SECOND / 10 / FRAMES_PER_SECOND);
+        int bins = size / 2 + 1;
+        for (int k = 0; k < bins; k++) {
+            average[k] = weight * average[k] + (1 - weight) * power[k];
+            if (hold) {
+                peakPower[k] = Math.max(peakPower[k] * release, average[k]);
+            }
+        }
+
+        publish(size, hold);
+    }
+
+    // Only runs when the size changes
+    private void resize(int size) {
+        fft = new FFT(size);
+        window = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size); // Hann
+            sum += window[i];
+        }
+        // Power of a full-scale sine in its bin, so that reads as 0 dB
+        fullScale = Math.pow(Short.MAX_VALUE * sum / 2, 2);
+        input = new double[size];
+        power = new double[size / 2 + 1];
+        average = new double[size / 2 + 1];
+        peakPower = new double[size / 2 + 1];
+    }
+
+    // Folds bins into columns: each column shows the strongest bin in its frequency range
+    private void publish(int size, boolean hold) {
+        Frame frame = frames.getWriteBuffer();
+        boolean log = logFrequency;
+        int columns = columnSetting;
+        double binWidth = (double) tap.getSampleRate() / size;
+        double maxFreq = tap.getSampleRate() / 2.0;
+        double minFreq = log ? MIN_FREQUENCY : 0;
+        int lastBin = size / 2;
+
+        for (int c = 0; c < columns; c++) {
+            int lo = (int) Math.floor(frequencyAt(c, columns, minFreq, maxFreq, log) / binWidth);
+            int hi = (int) Math.floor(frequencyAt(c + 1, columns, minFreq, maxFreq, log) / binWidth);
+            lo = Math.min(lo, lastBin);
+            hi = Math.max(lo, Math.min(hi, lastBin));
+            double level = 0;
+            double peak = 0;
+            for (int k = lo; k <= hi; k++) {
+                level = Math.max(level, average[k]);
+                peak = Math.max(peak, peakPower[k]);
+            }
+            frame.level[c] = toDb(level);
+            frame.peak[c] = hold ? toDb(peak) : FLOOR_DB;
+        }
+
+        frame.columns = columns;
+        frame.fftSize = size;
+        frame.logFrequency = log;
+        frame.minFrequency = minFreq;
+        frame.maxFrequency = maxFreq;
+        frames.publish();
+    }
+
+    // Frequency at the left edge of a column
+    public static double frequencyAt(double column, int columns, double minFreq, double maxFreq, boolean log) {
+        double x = column / columns;
+        return log ? minFreq * Math.pow(maxFreq / minFreq, x) : minFreq + (maxFreq - minFreq) * x;
+    }
+
+    private float toDb(double value) {
+        if (value <= 0) return FLOOR_DB;
+        return (float) Math.max(FLOOR_DB, 10 * Math.log10(value / fullScale));
+    }
+}
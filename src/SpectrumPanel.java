@@ -0,0 +1,187 @@
+import javax.swing.*;
+import java.awt.*;
+
+// Live spectrum next to the oscilloscope. All the analysis happens in SpectrumAnalyzer
+// on its own thread; this only draws the latest frame, one point per pixel column.
+// Right-click for FFT size, frequency axis, averaging and peak hold.
+public class SpectrumPanel extends JPanel {
+    private SpectrumAnalyzer analyzer;
+    private final int[] xPoints = new int[SpectrumAnalyzer.MAX_COLUMNS];
+    private final int[] yPoints = new int[SpectrumAnalyzer.MAX_COLUMNS];
+    private final int[] peakY = new int[SpectrumAnalyzer.MAX_COLUMNS];
+
+    private static final int[] FFT_SIZES = {1024, 2048, 4096, 8192, 16384};
+    private static final float RANGE_DB = 100;
+
+    // Colors
+    private Color levelColor = new Color(100, 180, 255);
+    private Color peakColor = new Color(255, 150, 100);
+    private Color gridColor = new Color(50, 52, 58);
+    private Color gridLabelColor = new Color(100, 102, 108);
+    private Color bgColor = new Color(25, 27, 32);
+    private Color borderColor = new Color(60, 62, 68);
+    private Color peakLineColor = new Color(peakColor.getRed(), peakColor.getGreen(), peakColor.getBlue(), 140);
+    private Color labelBgColor = new Color(35, 37, 42, 200);
+    private Color labelColor = new Color(180, 182, 188);
+
+    // Painting runs for every analyzer frame, so it reuses these instead of allocating
+    private static final BasicStroke GRID_STROKE = new BasicStroke(0.5f);
+    private static final BasicStroke PEAK_STROKE = new BasicStroke(1.0f);
+    private static final BasicStroke LEVEL_STROKE = new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final Font GRID_FONT = new Font("SansSerif", Font.PLAIN, 9);
+    private static final Font LABEL_FONT = new Font("SansSerif", Font.BOLD, 11);
+
+    public SpectrumPanel() {
+        setBackground(bgColor);
+        setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createLineBorder(borderColor, 1),
+                BorderFactory.createEmptyBorder(10, 15, 10, 15)
+        ));
+        setToolTipText("Right-click for options, double-click to reset peaks");
+
+        addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mousePressed(java.awt.event.MouseEvent e) {
+                if (e.isPopupTrigger()) showMenu(e);
+            }
+            public void mouseReleased(java.awt.event.MouseEvent e) {
+                if (e.isPopupTrigger()) showMenu(e);
+            }
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                if (e.getClickCount() == 2 && analyzer != null) analyzer.resetPeaks();
+            }
+        });
+    }
+
+    // Starts analyzing the tap on its own thread; null stops it
+    public void setSource(ScopeTap tap, EngineMetrics metrics) {
+        if (analyzer != null) analyzer.stop();
+        analyzer = tap != null ? new SpectrumAnalyzer(tap, metrics, this::repaint) : null;
+        if (analyzer != null) analyzer.start();
+    }
+
+    public SpectrumAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    private void showMenu(java.awt.event.MouseEvent e) {
+        if (analyzer == null) return;
+        JPopupMenu menu = new JPopupMenu();
+
+        ButtonGroup sizes = new ButtonGroup();
+        for (int size : FFT_SIZES) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem("FFT " + size, analyzer.getFftSize() == size);
+            item.addActionListener(a -> analyzer.setFftSize(size));
+            sizes.add(item);
+            menu.add(item);
+        }
+        menu.addSeparator();
+
+        JCheckBoxMenuItem log = new JCheckBoxMenuItem("Log frequency", analyzer.isLogFrequency());
+        log.addActionListener(a -> analyzer.setLogFrequency(log.isSelected()));
+        menu.add(log);
+
+        JCheckBoxMenuItem hold = new JCheckBoxMenuItem("Peak hold", analyzer.isPeakHold());
+        hold.addActionListener(a -> analyzer.setPeakHold(hold.isSelected()));
+        menu.add(hold);
+        menu.addSeparator();
+
+        ButtonGroup averaging = new ButtonGroup();
+        String[] names = {"No averaging", "Light averaging", "Heavy averaging"};
+        double[] weights = {0, 0.5, 0.9};
+        for (int i = 0; i < names.length; i++) {
+            double weight = weights[i];
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem(names[i], analyzer.getAveraging() == weight);
+            item.addActionListener(a -> analyzer.setAveraging(weight));
+            averaging.add(item);
+            menu.add(item);
+        }
+
+        menu.show(this, e.getX(), e.getY());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Insets insets = getInsets();
+        int x0 = insets.left;
+        int y0 = insets.top;
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+
+        SpectrumAnalyzer.Frame frame = null;
+        if (analyzer != null) {
+            // Next frame matches the current width, one column per pixel
+            analyzer.setColumns(width);
+            frame = analyzer.acquire();
+        }
+
+        // dB grid every 20 dB
+        g2d.setFont(GRID_FONT);
+        g2d.setStroke(GRID_STROKE);
+        for (int db = 0; db >= -RANGE_DB; db -= 20) {
+            int y = dbToY(db, y0, height);
+            g2d.setColor(gridColor);
+            g2d.drawLine(x0, y, x0 + width, y);
+            g2d.setColor(gridLabelColor);
+            g2d.drawString(db + " dB", x0 + width - 34, y - 2);
+        }
+
+        if (frame != null && frame.getColumns() > 1) {
+            drawFrequencyGrid(g2d, frame, x0, y0, width, height);
+
+            int columns = frame.getColumns();
+            double xScale = (double) width / (columns - 1);
+            for (int c = 0; c < columns; c++) {
+                xPoints[c] = x0 + (int)(c * xScale);
+                yPoints[c] = dbToY(frame.getLevel(c), y0, height);
+                peakY[c] = dbToY(frame.getPeak(c), y0, height);
+            }
+
+            g2d.setColor(peakLineColor);
+            g2d.setStroke(PEAK_STROKE);
+            g2d.drawPolyline(xPoints, peakY, columns);
+
+            g2d.setColor(levelColor);
+            g2d.setStroke(LEVEL_STROKE);
+            g2d.drawPolyline(xPoints, yPoints, columns);
+        }
+
+        // Draw label with subtle background
+        String label = "SPECTRUM" + (frame != null && frame.getColumns() > 0 ? "  FFT " + frame.getFftSize() : "");
+        g2d.setFont(LABEL_FONT);
+        int labelWidth = g2d.getFontMetrics().stringWidth(label) + 10;
+        g2d.setColor(labelBgColor);
+        g2d.fillRoundRect(x0 + 5, y0 + 5, labelWidth, 20, 4, 4);
+
+        g2d.setColor(labelColor);
+        g2d.drawString(label, x0 + 10, y0 + 19);
+    }
+
+    // Vertical lines at 100 Hz, 1 kHz, 10 kHz (log) or every 5 kHz (linear)
+    private void drawFrequencyGrid(Graphics2D g2d, SpectrumAnalyzer.Frame frame, int x0, int y0, int width, int height) {
+        double min = frame.getMinFrequency();
+        double max = frame.getMaxFrequency();
+        g2d.setFont(GRID_FONT);
+        g2d.setStroke(GRID_STROKE);
+
+        double start = frame.isLogFrequency() ? 100 : 5000;
+        for (double f = start; f < max; f = frame.isLogFrequency() ? f * 10 : f + 5000) {
+            double pos = frame.isLogFrequency()
+                    ? Math.log(f / min) / Math.log(max / min)
+                    : (f - min) / (max - min);
+            int x = x0 + (int)(pos * width);
+            g2d.setColor(gridColor);
+            g2d.drawLine(x, y0, x, y0 + height);
+            g2d.setColor(gridLabelColor);
+            g2d.drawString(f >= 1000 ? (int)(f / 1000) + "k" : String.valueOf((int) f), x + 2, y0 + height - 2);
+        }
+    }
+
+    private static int dbToY(float db, int y0, int height) {
+        float clamped = Math.max(-RANGE_DB, Math.min(0, db));
+        return y0 + (int)(-clamped / RANGE_DB * height);
+    }
+}
@@ -1,185 +1,845 @@
 import javax.sound.sampled.*;
-import org.mariuszgromada.math.mxparser.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleUnaryOperator;
 
 public class Synthesis {
     private SourceDataLine line;
+    // The audio thread renders into the ring, the output thread drains it into the line
     private Thread audioThread;
+    private Thread outputThread;
     private volatile boolean running = false;
-    private volatile boolean playing = false;
+
+    // Output buffering: frames rendered per block, how far the renderer may run ahead
+    // of the device, and the size of the line's own buffer. Only the output thread
+    // changes the block size while running; setters post a request it takes up at its
+    // next block (0 when there's none), start() takes it up before the threads run.
+    private volatile int blockFrames = 1024;
+    private final AtomicInteger requestedBlockFrames = new AtomicInteger(0);
+    private volatile int ringFrames = 2205; // 50 ms
+    private int lineBufferBytes = 8192;
+    private volatile boolean lowLatency = false;
+    private volatile int queuedFrames = 0;
     private volatile double frequency = 440;
     private final int SAMPLE_RATE = 44100;
-    private short[] lastSamples;
-    private final int BUFFER_SIZE = 800;
-    private ArrayList<Operator> operators;
-    private ArrayList<Function> operatorFunctions;
-    private volatile int[][] modMatrix;
+    private final int MAX_BLOCK_SIZE = 4096;
+    private final int MIN_BLOCK_SIZE = 64;
+    // Voices are rendered this many frames at a time, so the outputs of a few hundred
+    // operators still fit in cache
+    private final int OP_BLOCK_SIZE = 256;
+    // Mod depth changes are smoothed with about this time constant
+    private final int SMOOTHING_FRAMES = SAMPLE_RATE / 50;
+    // Low-latency mode shrinks the block again after this long without an underrun
+    private final long STABLE_NANOS = 5_000_000_000L;
+    // Upper limit for the ring fill level, about 3 s
+    private final PcmRingBuffer ring = new PcmRingBuffer(SAMPLE_RATE * 2);
+    // Copy of the output for the oscilloscope, about 0.7 s of slack
+    private final ScopeTap scope = new ScopeTap(32768, SAMPLE_RATE);
+    // And another one for the spectrum analyzer, which reads up to 16384 samples at a time
+    private final ScopeTap spectrumTap = new ScopeTap(65536, SAMPLE_RATE);
+    private final VoicePool voicePool = new VoicePool(16, SAMPLE_RATE);
+    // Note and polyphony changes from any thread, applied by the audio thread at their frame
+    private final EventQueue events = new EventQueue(1024);
+    // Frame number of the next frame renderBlock produces, only written by the audio thread
+    private volatile long renderedFrames = 0;
+    // Live input is stamped from the wall clock, mapped onto frames from this origin, so the
+    // spacing between events survives whatever block size the renderer runs at. The audio
+    // thread moves the origin when stamps would fall behind the renderer or too far ahead
+    // of it (start, underruns, clock drift).
+    private volatile long clockOriginNanos;
+    private volatile boolean clockAnchored = false;
+    private volatile int polyphony = 16;
+    // Next id for startNoteAt, well above any note number
+    private final AtomicInteger nextNoteId = new AtomicInteger(1 << 16);
+    private final EngineMetrics metrics = new EngineMetrics(SAMPLE_RATE);
+    // Builder state. Building a patch can take a while (expressions are parsed, wavetables
+    // rendered), so the methods that do are meant for one thread at a time; MainFrame runs
+    // them on a compile thread of its own. The settings are read back on the EDT.
+    private ArrayList<Operator> operators = new ArrayList<>();
+    private volatile boolean useWavetables = false;
+    private volatile int wavetableSize = 2048;
+    private volatile int interpolation = Wavetable.LINEAR;
+
+    // Latest compiled patch; the audio thread picks it up at the next block boundary
+    private final AtomicReference<Patch> patch = new AtomicReference<>(Patch.EMPTY);
+    // Last patch whose fading routes the audio thread has faded out; the next edit can
+    // start from its settled version and drop them
+    private volatile Patch fadedPatch = null;
 
+    // Render scratch, owned by the audio thread. Nothing in the render path allocates;
+    // the per-operator buffers are only resized when a bigger patch comes in.
+    private final RenderKernel kernel = RenderKernel.create();
+    // Last patch picked up from the EDT, and what's actually rendered: the same patch,
+    // or its settled version once the routes it fades out are silent
+    private Patch pickedPatch = null;
+    private Patch renderedPatch = null;
+    // Operator state of all voices as flat arrays, voice v's operator op is at v * opStride + op
+    private int opStride = 0;
+    private double[] phases = new double[0];
+    private double[] lastOutputs = new double[0];
+    // Note each voice's state belongs to; a voice that started a new note is reset first
+    private final long[] voiceStarts = new long[VoicePool.MAX_VOICES];
+    // Phase step per sample of each operator, for the voice being rendered
+    private double[] increments = new double[0];
+    private double[][] opBlocks = new double[0][];
+    // Mod depth of each route of renderedPatch at the start of the block, and where it
+    // ends up after the block. The depth is interpolated linearly in between, so a
+    // change costs one multiply-add per route and sample instead of clicking.
+    private double[] routeDepth = new double[0];
+    private double[] routeEnd = new double[0];
+    private double[] routeStep = new double[0];
+    private final double[] carrierBlock = new double[OP_BLOCK_SIZE];
+    private final double[] phaseBlock = new double[MAX_BLOCK_SIZE];
+    private final double[] modBlock = new double[MAX_BLOCK_SIZE];
+    private final double[] voiceBlock = new double[MAX_BLOCK_SIZE];
+    private final double[] mixBlock = new double[MAX_BLOCK_SIZE];
+    private final short[] pcmBlock = new short[MAX_BLOCK_SIZE];
+    // Output thread scratch
+    private final short[] outputBlock = new short[MAX_BLOCK_SIZE];
+    private final byte[] lineBuffer = new byte[MAX_BLOCK_SIZE * 2];
+    // Non-finite operator outputs replaced with 0 during the current block
+    private int nonFinite = 0;
+
+    // Compiles operators and routing together and publishes them in one step. The patch
+    // keeps its own list of the operators, later edits hand in the changed ones.
+    public void setPatch(ArrayList<Operator> ops, float[][] matrix) {
+        operators = new ArrayList<>(ops);
+        patch.set(Patch.compile(operators, matrix, basePatch(), useWavetables, wavetableSize, interpolation));
+    }
+
+    // Keeps the routing if the operator count didn't change
     public void setOperators(ArrayList<Operator> ops) {
-        operators = ops;
-        // Pre-compile functions once
-        operatorFunctions = new ArrayList<>();
-        if (operators != null) {
-            for (Operator op : operators) {
-                operatorFunctions.add(new Function("f(t) = " + op.getFunction()));
-            }
+        operators = new ArrayList<>(ops);
+        publishPatch();
+    }
+
+    // Only the routing is recompiled; depth changes are ramped in by the audio thread
+    public void setModMatrix(float[][] matrix) {
+        Patch current = basePatch();
+        if (current.getNumOperators() != operators.size()) {
+            setPatch(operators, matrix);
+            return;
         }
+        patch.set(current.withMatrix(matrix));
+    }
+
+    // One matrix cell changed (0-10). A depth change only copies the depths, the routing
+    // is rebuilt when a route is added.
+    public void setRoute(int src, int dst, float depth) {
+        patch.set(basePatch().withRoute(src, dst, depth));
     }
 
-    public void setModMatrix(int[][] matrix) {
-        modMatrix = matrix;
+    // Republishes the patch with op in place of the operator at index; fields are
+    // Operator.FUNCTION etc. Only a function or period change compiles anything, a
+    // frequency change is a copy.
+    public void updateOperator(int index, Operator op, int fields) {
+        operators.set(index, op);
+        patch.set(basePatch().withOperator(index, op, fields, useWavetables, wavetableSize, interpolation));
+    }
+
+    // A new last operator, the only one that's compiled
+    public void addOperator(Operator op) {
+        operators.add(op);
+        patch.set(basePatch().withOperatorAdded(op, useWavetables, wavetableSize, interpolation));
+    }
+
+    // Takes out the operator at index and its routes
+    public void removeOperator(int index) {
+        operators.remove(index);
+        patch.set(basePatch().withOperatorRemoved(index));
+    }
+
+    public Patch getPatch() {
+        return patch.get();
+    }
+
+    // Every operator compiled again on the current routing
+    private void publishPatch() {
+        patch.set(basePatch().withOperators(operators, useWavetables, wavetableSize, interpolation));
+    }
+
+    // The patch the next edit starts from: the latest one, without its fading routes once
+    // the audio thread has faded them out
+    private Patch basePatch() {
+        Patch current = patch.get();
+        return current == fadedPatch ? current.getSettled() : current;
+    }
+
+    // Pre-render each operator over one period and interpolate instead of evaluating per sample
+    public void setWavetablesEnabled(boolean enabled) {
+        useWavetables = enabled;
+        publishPatch();
+    }
+
+    public boolean isWavetablesEnabled() {
+        return useWavetables;
+    }
+
+    public void setWavetableSize(int size) {
+        wavetableSize = Math.max(16, size);
+        publishPatch();
+    }
+
+    public int getWavetableSize() {
+        return wavetableSize;
+    }
+
+    // Wavetable.LINEAR or Wavetable.CUBIC
+    public void setInterpolation(int order) {
+        interpolation = order == Wavetable.CUBIC ? Wavetable.CUBIC : Wavetable.LINEAR;
+        publishPatch();
+    }
+
+    public int getInterpolation() {
+        return interpolation;
     }
 
     public Synthesis() {
-        lastSamples = new short[BUFFER_SIZE];
+        this(true);
+    }
+
+    // Without an audio line the engine can still be driven through renderBlock
+    public Synthesis(boolean openLine) {
+        if (!openLine) return;
+        openLine();
+        metrics.register();
+        ExpressionCache.registerShared();
+    }
+
+    private void openLine() {
         try {
             AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
             line = AudioSystem.getSourceDataLine(format);
-            line.open(format, 8192);
+            line.open(format, lineBufferBytes);
         } catch (LineUnavailableException e) {
             e.printStackTrace();
         }
     }
 
     public void start() {
-        if (running) return;
+        if (running || line == null) return;
         running = true;
+        ring.clear();
         line.start();
+        int requested = requestedBlockFrames.getAndSet(0);
+        if (requested != 0) {
+            blockFrames = requested;
+        }
 
         audioThread = new Thread(new Runnable() {
             public void run() {
                 audioLoop();
             }
-        });
+        }, "FMSynth render");
+        outputThread = new Thread(new Runnable() {
+            public void run() {
+                outputLoop();
+            }
+        }, "FMSynth output");
         audioThread.start();
+        outputThread.start();
+    }
+
+    public void stop() {
+        if (!running) return;
+        running = false;
+        clockAnchored = false;
+        LockSupport.unpark(audioThread);
+        LockSupport.unpark(outputThread);
+        try {
+            audioThread.join();
+            outputThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.stop();
+        line.flush();
+    }
+
+    // Frames rendered per write; in low-latency mode this is only the starting point.
+    // Takes effect at the output thread's next block.
+    public void setBufferFrames(int frames) {
+        requestedBlockFrames.set(Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, frames)));
+    }
+
+    // The block size in use, a request that hasn't been taken up yet isn't counted
+    public int getBufferFrames() {
+        return blockFrames;
+    }
+
+    // How much rendered audio may wait in the ring ahead of the line. More absorbs GC pauses
+    // and scheduling hiccups on the render side, at the cost of that much extra latency.
+    // The renderer always keeps at least one block ahead.
+    public void setRingBufferMillis(double millis) {
+        int frames = (int) (millis * SAMPLE_RATE / 1000);
+        ringFrames = Math.max(0, Math.min(ring.capacity(), frames));
+    }
+
+    public double getRingBufferMillis() {
+        return ringFrames * 1000.0 / SAMPLE_RATE;
+    }
+
+    // Size of the device line's buffer; reopens the line, restarting output if it was running
+    public void setLineBufferBytes(int bytes) {
+        lineBufferBytes = Math.max(MIN_BLOCK_SIZE * 2, bytes & ~1);
+        if (line == null) return;
+        boolean wasRunning = running;
+        stop();
+        line.close();
+        openLine();
+        if (wasRunning) start();
+    }
+
+    public int getLineBufferBytes() {
+        return line != null ? line.getBufferSize() : lineBufferBytes;
+    }
+
+    // Keeps only about one block queued in the line and two in the ring. Starts small,
+    // doubles the block on every underrun and halves it again after STABLE_NANOS without
+    // one. Turning it off goes back to the ring buffer setting.
+    public void setLowLatencyMode(boolean enabled) {
+        lowLatency = enabled;
+        if (enabled) {
+            requestedBlockFrames.set(128);
+        }
+    }
+
+    public boolean isLowLatencyMode() {
+        return lowLatency;
+    }
+
+    public long getUnderrunCount() {
+        return metrics.getUnderrunCount();
+    }
+
+    // Render timing, DSP load and engine counters; also registered over JMX for live engines
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // What's waiting in the ring and the line plus the block being rendered
+    public double getLatencyMillis() {
+        return (ring.size() + queuedFrames + blockFrames) * 1000.0 / SAMPLE_RATE;
     }
 
     public void setFrequency(double freq) {
         frequency = freq;
     }
 
+    // Legacy single-note controls, kept for callers that don't track notes
     public void playSignal() {
-        playing = true;
+        noteOn(-1, frequency);
     }
 
     public void stopSignal() {
-        playing = false;
+        events.post(EventQueue.ALL_NOTES_OFF, currentFrame(), 0, 0);
+    }
+
+    public void noteOn(int note, double freq) {
+        noteOnAt(currentFrame(), note, freq);
+    }
+
+    public void noteOff(int note) {
+        noteOffAt(currentFrame(), note);
+    }
+
+    // Play at an exact frame of the render timeline (see currentFrame); a frame that's
+    // already rendered plays at the start of the next block. False if the queue was full.
+    public boolean noteOnAt(long frame, int note, double freq) {
+        return events.post(EventQueue.NOTE_ON, frame, note, freq);
+    }
+
+    public boolean noteOffAt(long frame, int note) {
+        return events.post(EventQueue.NOTE_OFF, frame, note, 0);
+    }
+
+    // For overlapping notes of the same pitch: plays a note under an id of its own, which
+    // noteOffAt(frame, id) releases without touching any other voice. Ids never collide
+    // with note numbers (MIDI is 0-127). Returns -1 if the queue was full.
+    public int startNoteAt(long frame, double freq) {
+        int id = nextNoteId.getAndIncrement();
+        return noteOnAt(frame, id, freq) ? id : -1;
+    }
+
+    // Frame live input is stamped with. While running that's the wall clock on the render
+    // timeline, a block or so ahead of the renderer; otherwise the next frame to render.
+    public long currentFrame() {
+        if (!clockAnchored) return renderedFrames;
+        return (long) ((System.nanoTime() - clockOriginNanos) * (SAMPLE_RATE / 1e9));
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    public void resetVoices() {
+        events.post(EventQueue.RESET, currentFrame(), 0, 0);
+    }
+
+    // Takes effect on the audio thread like a note, getPolyphony reports it right away
+    public void setPolyphony(int voices) {
+        polyphony = Math.max(1, Math.min(VoicePool.MAX_VOICES, voices));
+        events.post(EventQueue.POLYPHONY, currentFrame(), 0, polyphony);
+    }
+
+    public int getPolyphony() {
+        return polyphony;
+    }
+
+    public void setStealPolicy(VoicePool.StealPolicy policy) {
+        voicePool.setStealPolicy(policy);
+    }
+
+    public String getKernelName() {
+        return kernel.getName();
     }
 
     public void updateParams(Params p) {
         // Placeholder
     }
 
-    public short[] getSamples() {
-        return lastSamples.clone();
+    public ScopeTap getScopeTap() {
+        return scope;
+    }
+
+    public ScopeTap getSpectrumTap() {
+        return spectrumTap;
     }
 
     public double eval(double in, String type) {
         return Math.sin(in);
     }
 
+    // Renders blocks into the ring whenever it's below its fill level
     private void audioLoop() {
-        double[] phases = new double[10]; // max 10 operators
-        double dt = 1.0 / SAMPLE_RATE;
-        byte[] buffer = new byte[2048];
+        while (running) {
+            int frames = blockFrames;
+            if (ring.size() + frames > ringLimit(frames) || ring.remaining() < frames) {
+                // The output thread unparks us after every read
+                LockSupport.parkNanos(frames * 250_000_000L / SAMPLE_RATE);
+                continue;
+            }
+
+            anchorClock(frames);
+            renderBlock(mixBlock, frames);
+            // Chords can sum past full scale, clip instead of wrapping around
+            kernel.toPcm(mixBlock, 0.15, pcmBlock, frames);
+
+            scope.write(pcmBlock, frames);
+            spectrumTap.write(pcmBlock, frames);
+
+            ring.write(pcmBlock, 0, frames);
+            LockSupport.unpark(outputThread);
+        }
+    }
+
+    // Ring fill level the renderer stops at. Low-latency mode caps it at two blocks, so it
+    // shrinks and grows with the block instead of holding the full ring setting.
+    private int ringLimit(int frames) {
+        int limit = lowLatency ? Math.min(ringFrames, 2 * frames) : ringFrames;
+        return Math.max(limit, frames);
+    }
+
+    // Keeps live stamps ahead of the renderer: re-anchors one block past the render position
+    // when they'd land in audio that's already rendered or more than the ring ahead of it
+    private void anchorClock(int frames) {
+        long now = System.nanoTime();
+        long start = renderedFrames;
+        long stamp = (long) ((now - clockOriginNanos) * (SAMPLE_RATE / 1e9));
+        if (!clockAnchored || stamp < start || stamp > start + ringLimit(frames) + 4L * frames) {
+            clockOriginNanos = now - (long) ((start + frames) * (1e9 / SAMPLE_RATE));
+            clockAnchored = true;
+        }
+    }
+
+    // Drains the ring into the line; blocking in line.write only holds up this thread
+    private void outputLoop() {
+        boolean primed = false;
+        long stableSince = System.nanoTime();
 
         while (running) {
+            if (requestedBlockFrames.get() != 0) {
+                blockFrames = requestedBlockFrames.getAndSet(0);
+                stableSince = System.nanoTime();
+            }
+            int frames = blockFrames;
+            int fill = ring.size();
+            metrics.recordRingFill(fill);
+            if (fill == 0) {
+                if (primed) metrics.recordRingEmpty();
+                LockSupport.parkNanos(frames * 250_000_000L / SAMPLE_RATE);
+                continue;
+            }
+            if (lowLatency) {
+                waitForRoom(frames);
+            }
+
+            int n = ring.read(outputBlock, 0, frames);
+            LockSupport.unpark(audioThread);
             int bufferIdx = 0;
-            int sampleIdx = 0;
-            for (int i = 0; i < 1024; i++) {
-                double value = 0;
-
-                if (playing) {
-                    if (operatorFunctions != null && operatorFunctions.size() > 0 && operators != null) {
-                        int numOps = operators.size();
-                        double[] opOutputs = new double[numOps];
-
-                        // First pass: calculate modulators (no modulation applied)
-                        for (int opIdx = 0; opIdx < numOps; opIdx++) {
-                            Operator op = operators.get(opIdx);
-                            if (!op.isCarrier()) {
-                                Function func = operatorFunctions.get(opIdx);
-                                double opFreq = op.getFrequency();
-
-                                // Modulators don't receive modulation
-                                double t = phases[opIdx] * 2 * Math.PI;
-                                opOutputs[opIdx] = func.calculate(t);
-
-                                if (!Double.isFinite(opOutputs[opIdx])) {
-                                    opOutputs[opIdx] = 0;
-                                }
-
-                                // Update phase for modulator
-                                phases[opIdx] += opFreq * dt;
-                                if (phases[opIdx] > 1) phases[opIdx] -= 1;
-                            }
-                        }
-
-                        // Second pass: calculate carriers (with modulation from modulators)
-                        for (int opIdx = 0; opIdx < numOps; opIdx++) {
-                            Operator op = operators.get(opIdx);
-                            if (op.isCarrier()) {
-                                Function func = operatorFunctions.get(opIdx);
-                                double opFreq = frequency; // Carriers use keyboard frequency
-
-                                // Calculate modulation from modulators
-                                double modulation = 0;
-                                if (modMatrix != null && modMatrix.length == numOps) {
-                                    for (int modIdx = 0; modIdx < numOps; modIdx++) {
-                                        if (modIdx != opIdx && modMatrix[modIdx][opIdx] != 0) {
-                                            // modIdx modulates opIdx
-                                            double modDepth = modMatrix[modIdx][opIdx] / 10.0; // scale mod index
-                                            modulation += opOutputs[modIdx] * modDepth;
-                                        }
-                                    }
-                                }
-
-                                // Apply phase modulation (FM synthesis)
-                                double t = (phases[opIdx] + modulation) * 2 * Math.PI;
-                                opOutputs[opIdx] = func.calculate(t);
-
-                                if (!Double.isFinite(opOutputs[opIdx])) {
-                                    opOutputs[opIdx] = 0;
-                                }
-
-                                // Update phase for carrier
-                                phases[opIdx] += opFreq * dt;
-                                if (phases[opIdx] > 1) phases[opIdx] -= 1;
-                            }
-                        }
-
-                        // Third pass: sum carrier outputs
-                        int carrierCount = 0;
-                        for (int opIdx = 0; opIdx < numOps; opIdx++) {
-                            if (operators.get(opIdx).isCarrier()) {
-                                value += opOutputs[opIdx];
-                                carrierCount++;
-                            }
-                        }
-
-                        // Normalize by carrier count
-                        if (carrierCount > 0) {
-                            value /= carrierCount;
-                        }
-                    } else {
-                        // Fallback to sine if no operators
-                        value = Math.sin(phases[0] * 2 * Math.PI);
-                        phases[0] += frequency * dt;
-                        if (phases[0] > 1) phases[0] -= 1;
+            for (int i = 0; i < n; i++) {
+                short sample = outputBlock[i];
+                lineBuffer[bufferIdx++] = (byte)(sample & 0xFF);
+                lineBuffer[bufferIdx++] = (byte)((sample >> 8) & 0xFF);
+            }
+
+            // An empty line before the write means the device ran dry
+            int queued = (line.getBufferSize() - line.available()) / 2;
+            long now = System.nanoTime();
+            if (primed && queued == 0) {
+                metrics.recordUnderrun();
+                if (lowLatency) {
+                    blockFrames = Math.min(MAX_BLOCK_SIZE, frames * 2);
+                }
+                stableSince = now;
+            } else if (lowLatency && now - stableSince > STABLE_NANOS && frames > MIN_BLOCK_SIZE) {
+                blockFrames = frames / 2;
+                stableSince = now;
+            }
+            queuedFrames = queued;
+            primed = true;
+
+            line.write(lineBuffer, 0, n * 2);
+        }
+    }
+
+    // Don't let more than about one block pile up in the line
+    private void waitForRoom(int frames) {
+        while (running) {
+            int queued = (line.getBufferSize() - line.available()) / 2;
+            if (queued <= frames) return;
+            // Sleep for about half of the excess
+            LockSupport.parkNanos((queued - frames) * 500_000_000L / SAMPLE_RATE);
+        }
+    }
+
+    // Render any number of frames straight to 16-bit samples, scaled and clipped the same
+    // way as the live output. Used for offline rendering on an engine without an audio line.
+    public void render(short[] dst, int offset, int frames) {
+        while (frames > 0) {
+            int n = Math.min(frames, MAX_BLOCK_SIZE);
+            renderBlock(mixBlock, n);
+            kernel.toPcm(mixBlock, 0.15, pcmBlock, n);
+            System.arraycopy(pcmBlock, 0, dst, offset, n);
+            offset += n;
+            frames -= n;
+        }
+    }
+
+    public int getSampleRate() {
+        return SAMPLE_RATE;
+    }
+
+    // Render up to MAX_BLOCK_SIZE frames of the mixed (unscaled) output of all active voices
+    public void renderBlock(double[] out, int frames) {
+        long startNanos = System.nanoTime();
+        kernel.clear(out, frames);
+        // One read per block, the patch can't change under us mid-block
+        Patch p = patch.get();
+        if (p != pickedPatch) {
+            pickedPatch = p;
+            ensureScratch(p.getNumOperators());
+            carryRouteDepths(renderedPatch, p);
+            if (renderedPatch != null) metrics.recordPatchSwap();
+            renderedPatch = p;
+        }
+        // Blocks are split at event frames, so a note starts on its exact sample
+        events.drain();
+        long blockStart = renderedFrames;
+        int activeVoices = 0;
+        int offset = 0;
+        while (offset < frames) {
+            while (events.nextFrame() <= blockStart + offset) {
+                applyEvent();
+            }
+            int end = (int) Math.min(frames, events.nextFrame() - blockStart);
+            // A reset can switch to the patch without its fading routes
+            activeVoices = Math.max(activeVoices, renderSegment(renderedPatch, out, offset, end - offset));
+            offset = end;
+        }
+        renderedFrames = blockStart + frames;
+        settleFadedRoutes();
+
+        metrics.recordNonFinite(nonFinite);
+        nonFinite = 0;
+        metrics.recordBlock(System.nanoTime() - startNanos, frames, activeVoices, p.getNumOperators());
+    }
+
+    // Adds frames [offset, offset + frames) of every active voice to out, returns how many played
+    private int renderSegment(Patch p, double[] out, int offset, int frames) {
+        rampRouteDepths(p, frames);
+
+        int activeVoices = 0;
+        int numVoices = voicePool.getVoiceCount();
+        for (int v = 0; v < numVoices; v++) {
+            Voice voice = voicePool.getVoice(v);
+            if (!voice.isActive()) continue;
+
+            activeVoices++;
+            renderVoiceBlock(p, voice, v, frames);
+
+            // Envelope is applied per sample, a voice can finish its release mid-block
+            for (int i = 0; i < frames && voice.isActive(); i++) {
+                out[offset + i] += voiceBlock[i] * voice.nextLevel();
+            }
+        }
+
+        double[] depths = routeDepth;
+        routeDepth = routeEnd;
+        routeEnd = depths;
+        return activeVoices;
+    }
+
+    // Applies the earliest pending event to the voices
+    private void applyEvent() {
+        switch (events.nextType()) {
+            case EventQueue.NOTE_ON:
+                voicePool.noteOn(events.nextNote(), events.nextValue());
+                break;
+            case EventQueue.NOTE_OFF:
+                voicePool.noteOff(events.nextNote());
+                break;
+            case EventQueue.ALL_NOTES_OFF:
+                voicePool.allNotesOff();
+                break;
+            case EventQueue.RESET:
+                voicePool.reset();
+                snapRouteDepths();
+                break;
+            case EventQueue.POLYPHONY:
+                voicePool.setVoiceCount((int) events.nextValue());
+                break;
+            default:
+                break;
+        }
+        events.remove();
+    }
+
+    // Only runs when the patch changes, the steady state never allocates. Voice state
+    // keeps its layout until a patch with more operators comes in.
+    private void ensureScratch(int numOps) {
+        int stride = Math.max(1, numOps);
+        if (stride > opStride) {
+            double[] newPhases = new double[VoicePool.MAX_VOICES * stride];
+            double[] newOutputs = new double[VoicePool.MAX_VOICES * stride];
+            for (int v = 0; v < VoicePool.MAX_VOICES; v++) {
+                System.arraycopy(phases, v * opStride, newPhases, v * stride, opStride);
+                System.arraycopy(lastOutputs, v * opStride, newOutputs, v * stride, opStride);
+            }
+            phases = newPhases;
+            lastOutputs = newOutputs;
+            opStride = stride;
+            increments = new double[stride];
+        }
+        if (opBlocks.length < numOps) {
+            double[][] blocks = new double[numOps][];
+            for (int i = 0; i < numOps; i++) {
+                blocks[i] = i < opBlocks.length ? opBlocks[i] : new double[OP_BLOCK_SIZE];
+            }
+            opBlocks = blocks;
+        }
+    }
+
+    // Only runs when the patch changes. Routes that were already playing keep their
+    // current depth and ramp from there, new ones fade in from 0. After a structural
+    // change (operators added or removed) the indices don't match and depths start
+    // at their targets.
+    private void carryRouteDepths(Patch old, Patch p) {
+        int routes = p.getRouteCount();
+        if (routeEnd.length < routes) {
+            // Doubling, so a patch that gains one route at a time doesn't allocate every time
+            int size = Math.max(routes, 2 * routeEnd.length);
+            routeDepth = Arrays.copyOf(routeDepth, size);
+            routeEnd = new double[size];
+            routeStep = new double[size];
+        }
+        boolean sameOperators = old != null && old.getNumOperators() == p.getNumOperators();
+        for (int dst = 0; dst < p.getNumOperators(); dst++) {
+            for (int r = p.getInputStart(dst); r < p.getInputEnd(dst); r++) {
+                routeEnd[r] = sameOperators ? 0 : p.getInputDepth(r);
+                if (!sameOperators) continue;
+                for (int o = old.getInputStart(dst); o < old.getInputEnd(dst); o++) {
+                    if (old.getInputSource(o) == p.getInputSource(r)) {
+                        routeEnd[r] = routeDepth[o];
+                        break;
+                    }
+                }
+            }
+        }
+        double[] depths = routeDepth;
+        routeDepth = routeEnd;
+        routeEnd = depths;
+    }
+
+    // After a reset nothing is sounding, so there's nothing to smooth: every route jumps
+    // to its target and routes kept only to fade out are dropped. Output from then on
+    // doesn't depend on what was rendered before, e.g. in a reused OfflineRenderer.
+    private void snapRouteDepths() {
+        Patch p = pickedPatch;
+        if (p == null) return;
+        // The settled patch has no more routes than p, the arrays are big enough
+        renderedPatch = p.getSettled();
+        for (int r = 0; r < renderedPatch.getRouteCount(); r++) {
+            routeDepth[r] = renderedPatch.getInputDepth(r);
+        }
+        fadedPatch = p;
+    }
+
+    // Once every route the patch fades out has reached 0, renders its settled version
+    // instead and lets the publishing side know it can drop them too. Nothing is compiled
+    // here, the settled patch was built along with the published one.
+    private void settleFadedRoutes() {
+        Patch p = renderedPatch;
+        if (p == null || p.getSettled() == p) return;
+        for (int r = 0; r < p.getRouteCount(); r++) {
+            if (p.getInputDepth(r) == 0 && routeDepth[r] != 0) return;
+        }
+        carryRouteDepths(p, p.getSettled());
+        renderedPatch = p.getSettled();
+        fadedPatch = pickedPatch;
+    }
+
+    // Block rate: each route covers part of the way to its target, the larger the
+    // block the more, and lands on it once within a millionth
+    private void rampRouteDepths(Patch p, int frames) {
+        double fraction = Math.min(1.0, (double) frames / SMOOTHING_FRAMES);
+        for (int r = 0; r < p.getRouteCount(); r++) {
+            double target = p.getInputDepth(r);
+            double end = routeDepth[r] + (target - routeDepth[r]) * fraction;
+            if (Math.abs(target - end) < 1e-6) end = target;
+            routeEnd[r] = end;
+            routeStep[r] = (end - routeDepth[r]) / frames;
+        }
+    }
+
+    // Renders one voice into voiceBlock, OP_BLOCK_SIZE frames at a time
+    private void renderVoiceBlock(Patch p, Voice voice, int v, int frames) {
+        int base = v * opStride;
+        if (voiceStarts[v] != voice.getStartOrder()) {
+            // New note on this voice, every operator starts at phase 0; a stolen voice
+            // carries on from its current phases so the waveform doesn't jump
+            voiceStarts[v] = voice.getStartOrder();
+            if (!voice.isStolen()) {
+                Arrays.fill(phases, base, base + opStride, 0);
+                Arrays.fill(lastOutputs, base, base + opStride, 0);
+            }
+        }
+
+        int numOps = p.getNumOperators();
+        if (numOps == 0) {
+            // Fallback to sine if no operators
+            phases[base] = kernel.phaseRamp(phaseBlock, phases[base], voice.getFrequency() / SAMPLE_RATE, frames);
+            for (int i = 0; i < frames; i++) {
+                voiceBlock[i] = Math.sin(phaseBlock[i] * 2 * Math.PI);
+            }
+            return;
+        }
+
+        // Carriers follow the voice's note, modulators their own frequency
+        double noteIncrement = voice.getFrequency() / SAMPLE_RATE;
+        for (int op = 0; op < numOps; op++) {
+            increments[op] = p.isCarrier(op) ? noteIncrement : p.getFrequency(op) / SAMPLE_RATE;
+        }
+
+        for (int offset = 0; offset < frames; offset += OP_BLOCK_SIZE) {
+            int n = Math.min(OP_BLOCK_SIZE, frames - offset);
+            if (p.hasFeedback()) {
+                renderOperatorsFeedback(p, base, offset, n);
+            } else {
+                renderOperators(p, base, offset, n);
+            }
+
+            for (int op = 0; op < numOps; op++) {
+                lastOutputs[base + op] = opBlocks[op][n - 1];
+            }
+
+            // Sum carrier outputs, each scaled by 1 / carrier count
+            kernel.clear(carrierBlock, n);
+            for (int k = 0; k < p.getCarrierCount(); k++) {
+                int op = p.getCarrier(k);
+                kernel.multiplyAdd(carrierBlock, opBlocks[op], p.getOutputGain(op), n);
+            }
+            System.arraycopy(carrierBlock, 0, voiceBlock, offset, n);
+        }
+    }
+
+    // Topological order: every input is fully rendered before the operator that reads it,
+    // one whole operator at a time
+    private void renderOperators(Patch p, int base, int offset, int frames) {
+        int numOps = p.getNumOperators();
+        for (int k = 0; k < numOps; k++) {
+            int opIdx = p.getOrder(k);
+            phases[base + opIdx] = kernel.phaseRamp(phaseBlock, phases[base + opIdx], increments[opIdx], frames);
+
+            int start = p.getInputStart(opIdx);
+            int end = p.getInputEnd(opIdx);
+            if (start < end) {
+                kernel.clear(modBlock, frames);
+                for (int r = start; r < end; r++) {
+                    // Depth at the first frame of this sub-block
+                    double depth = routeDepth[r] + (offset + 1) * routeStep[r];
+                    if (routeStep[r] != 0) {
+                        kernel.multiplyAddRamp(modBlock, opBlocks[p.getInputSource(r)], depth, routeStep[r], frames);
+                    } else if (depth != 0) {
+                        kernel.multiplyAdd(modBlock, opBlocks[p.getInputSource(r)], depth, frames);
                     }
                 }
+                kernel.add(phaseBlock, modBlock, frames);
+            }
+
+            // Apply phase modulation (FM synthesis)
+            evaluate(p.getFunction(opIdx), phaseBlock, opBlocks[opIdx], frames);
+        }
+    }
+
+    // Routing with cycles: operators are interleaved sample by sample so feedback
+    // routes can read their source's output from the previous sample
+    private void renderOperatorsFeedback(Patch p, int base, int offset, int frames) {
+        int numOps = p.getNumOperators();
+
+        for (int i = 0; i < frames; i++) {
+            for (int k = 0; k < numOps; k++) {
+                int opIdx = p.getOrder(k);
 
-                short sample = (short)(value * Short.MAX_VALUE * 0.15);
+                double modulation = 0;
+                for (int r = p.getInputStart(opIdx); r < p.getInputEnd(opIdx); r++) {
+                    int src = p.getInputSource(r);
+                    double input;
+                    if (!p.isInputDelayed(r)) {
+                        input = opBlocks[src][i];
+                    } else {
+                        input = i > 0 ? opBlocks[src][i - 1] : lastOutputs[base + src];
+                    }
+                    modulation += input * (routeDepth[r] + (offset + i + 1) * routeStep[r]);
+                }
 
-                if (sampleIdx < BUFFER_SIZE) {
-                    lastSamples[sampleIdx++] = sample;
+                int slot = base + opIdx;
+                double value = p.getFunction(opIdx).applyAsDouble((phases[slot] + modulation) * 2 * Math.PI);
+                if (Double.isFinite(value)) {
+                    opBlocks[opIdx][i] = value;
+                } else {
+                    opBlocks[opIdx][i] = 0;
+                    nonFinite++;
                 }
 
-                buffer[bufferIdx++] = (byte)(sample & 0xFF);
-                buffer[bufferIdx++] = (byte)((sample >> 8) & 0xFF);
+                phases[slot] += increments[opIdx];
+                if (phases[slot] > 1) phases[slot] -= 1;
             }
+        }
+    }
 
-            line.write(buffer, 0, buffer.length);
+    private void evaluate(DoubleUnaryOperator func, double[] phase, double[] dst, int frames) {
+        for (int i = 0; i < frames; i++) {
+            double value = func.applyAsDouble(phase[i] * 2 * Math.PI);
+            if (Double.isFinite(value)) {
+                dst[i] = value;
+            } else {
+                dst[i] = 0;
+                nonFinite++;
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+// Turns the tap's sample stream into scope traces. Each sweep waits for a rising edge
+// through the trigger level (with hysteresis, so noise around the level doesn't retrigger),
+// then covers the time window with one min/max pair per pixel column, updated sample by
+// sample as the audio comes in. Painting a trace costs the same for a 1 ms window as for
+// a 5 s one.
+//
+// Runs on the tap's notifier thread; the EDT only changes settings and picks up traces.
+public class TriggeredScope {
+    public static final int MAX_COLUMNS = 4096;
+    public static final double MIN_WINDOW = 0.001;
+    public static final double MAX_WINDOW = 5.0;
+
+    // Published at most this often while a long sweep is still running
+    private static final int PROGRESS_PER_SECOND = 30;
+
+    // One sweep, one min/max pair per column
+    public static final class Trace {
+        private final short[] min = new short[MAX_COLUMNS];
+        private final short[] max = new short[MAX_COLUMNS];
+        private int columns = 0;
+        private int filled = 0;
+        private double windowSeconds;
+        private boolean triggered;
+
+        public int getColumns() { return columns; }
+        // Columns already covered; less than getColumns() while the sweep is running
+        public int getFilled() { return filled; }
+        public short getMin(int column) { return min[column]; }
+        public short getMax(int column) { return max[column]; }
+        public double getWindowSeconds() { return windowSeconds; }
+        // False when the sweep free-ran because nothing crossed the trigger level
+        public boolean isTriggered() { return triggered; }
+    }
+
+    private final ScopeTap tap;
+    private final Runnable onTrace;
+    private final TripleBuffer<Trace> traces = new TripleBuffer<>(new Trace(), new Trace(), new Trace());
+
+    // Settings, picked up at the start of the next sweep
+    private volatile int columnSetting = 800;
+    private volatile double windowSetting = 0.02;
+    private volatile int triggerLevel = 0;
+    private volatile int hysteresis = 328; // 1% of full scale
+
+    // Sweep state, notifier thread only
+    private final short[] chunk = new short[4096];
+    private final short[] sweepMin = new short[MAX_COLUMNS];
+    private final short[] sweepMax = new short[MAX_COLUMNS];
+    private boolean capturing = false;
+    private boolean armed = false;
+    private boolean sweepTriggered;
+    private long waited = 0;
+    private int columns;
+    private double window;
+    private long windowSamples;
+    private long position;
+    private int column;
+    private long lastProgress;
+
+    // onTrace runs on the notifier thread after each published trace, e.g. a repaint() call
+    public TriggeredScope(ScopeTap scopeTap, Runnable onTrace) {
+        tap = scopeTap;
+        this.onTrace = onTrace;
+    }
+
+    public void start() {
+        tap.startNotifier(this::process);
+    }
+
+    public void stop() {
+        tap.stopNotifier();
+    }
+
+    // ========== SETTINGS (any thread) ==========
+
+    // Usually the plot width in pixels
+    public void setColumns(int count) {
+        columnSetting = Math.max(1, Math.min(MAX_COLUMNS, count));
+    }
+
+    public void setTimeWindow(double seconds) {
+        windowSetting = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, seconds));
+    }
+
+    public double getTimeWindow() {
+        return windowSetting;
+    }
+
+    // Level and hysteresis as fractions of full scale
+    public void setTrigger(double level, double hyst) {
+        triggerLevel = (int) (Math.max(-1, Math.min(1, level)) * Short.MAX_VALUE);
+        hysteresis = (int) (Math.max(0, Math.min(1, hyst)) * Short.MAX_VALUE);
+    }
+
+    // ========== READER (EDT) ==========
+
+    // Latest trace; stays valid until the next call
+    public Trace acquire() {
+        return traces.acquire();
+    }
+
+    // ========== NOTIFIER THREAD ==========
+
+    // Drains whatever the tap has; returns true if a trace was published
+    public boolean process() {
+        boolean published = false;
+        int n;
+        while ((n = tap.read(chunk, 0, chunk.length)) > 0) {
+            for (int i = 0; i < n; i++) {
+                published |= accept(chunk[i]);
+            }
+        }
+
+        // Show long sweeps while they're still running
+        if (capturing && position - lastProgress >= tap.getSampleRate() / PROGRESS_PER_SECOND) {
+            publish(column);
+            published = true;
+        }
+        if (published && onTrace != null) {
+            onTrace.run();
+        }
+        return published;
+    }
+
+    private boolean accept(short sample) {
+        if (!capturing) {
+            // Must drop below the band before a rise through it counts
+            if (sample < triggerLevel - hysteresis) {
+                armed = true;
+            } else if (armed && sample >= triggerLevel + hysteresis) {
+                startSweep(true);
+            }
+            // Nothing to trigger on (silence, DC, a level outside the signal), free-run
+            // like a scope in auto mode; counts every sample, armed or not
+            if (!capturing && ++waited >= windowSamples(windowSetting)) {
+                startSweep(false);
+            }
+            if (!capturing) return false;
+        }
+
+        int col = (int) (position * columns / windowSamples);
+        if (col != column) {
+            column = col;
+            sweepMin[col] = sample;
+            sweepMax[col] = sample;
+        } else if (sample < sweepMin[col]) {
+            sweepMin[col] = sample;
+        } else if (sample > sweepMax[col]) {
+            sweepMax[col] = sample;
+        }
+
+        if (++position < windowSamples) return false;
+        publish(columns);
+        capturing = false;
+        armed = false;
+        waited = 0;
+        return true;
+    }
+
+    private void startSweep(boolean triggered) {
+        window = windowSetting;
+        windowSamples = windowSamples(window);
+        // Never more columns than samples, so every column gets at least one
+        columns = (int) Math.min(columnSetting, windowSamples);
+        sweepTriggered = triggered;
+        position = 0;
+        column = -1;
+        lastProgress = 0;
+        capturing = true;
+    }
+
+    private long windowSamples(double seconds) {
+        return Math.max(1, Math.round(seconds * tap.getSampleRate()));
+    }
+
+    // Copies the first filled columns of the running sweep into the next trace
+    private void publish(int filled) {
+        Trace trace = traces.getWriteBuffer();
+        System.arraycopy(sweepMin, 0, trace.min, 0, filled);
+        System.arraycopy(sweepMax, 0, trace.max, 0, filled);
+        trace.columns = columns;
+        trace.filled = filled;
+        trace.windowSeconds = window;
+        trace.triggered = sweepTriggered;
+        traces.publish();
+        lastProgress = position;
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free handoff of the latest complete frame from one writer thread to one reader
+// thread. Three preallocated buffers rotate between writer, reader and a shared "latest"
+// slot: the writer fills its buffer and swaps it into the slot, the reader swaps the slot
+// for its own buffer when there's something new. Neither side ever sees a buffer the
+// other is still touching, so frames never tear, and nothing is copied.
+//
+// Frames the reader doesn't get to in time are replaced by newer ones.
+public class TripleBuffer<T> {
+    private static final int FRESH = 4; // set in slot when the latest buffer hasn't been read yet
+
+    private final Object[] buffers;
+    private final AtomicInteger slot = new AtomicInteger(1);
+    private int writeIndex = 0;
+    private int readIndex = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[]{first, second, third};
+    }
+
+    // ========== WRITER ==========
+
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    // Makes the write buffer the latest frame; getWriteBuffer() returns a different one after this
+    public void publish() {
+        writeIndex = slot.getAndSet(writeIndex | FRESH) & 3;
+    }
+
+    // ========== READER ==========
+
+    public boolean hasNewFrame() {
+        return (slot.get() & FRESH) != 0;
+    }
+
+    // Latest complete frame. It stays valid until the next call, don't keep it longer.
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if (hasNewFrame()) {
+            readIndex = slot.getAndSet(readIndex) & 3;
+        }
+        return (T) buffers[readIndex];
+    }
+}
@@ -0,0 +1,64 @@
+// One note of the polyphonic engine. Voices are allocated once by the VoicePool
+// and reused, so starting a note never allocates. Operator phases live in the engine,
+// sized from the patch; it resets them when it sees a new start order, unless the
+// voice was stolen while still sounding.
+public class Voice {
+    private volatile boolean active = false;
+    private boolean released = false;
+    private int note = -1;
+    private double frequency = 440;
+    private long startOrder = 0;
+    // True if the current note took over a voice that was still sounding
+    private boolean stolen = false;
+    private double level = 0;
+    private final double attackStep;
+    private final double releaseStep;
+
+    public Voice(double attackStep, double releaseStep) {
+        this.attackStep = attackStep;
+        this.releaseStep = releaseStep;
+    }
+
+    // Getters
+    public boolean isActive() { return active; }
+    public boolean isReleased() { return released; }
+    public int getNote() { return note; }
+    public double getFrequency() { return frequency; }
+    public long getStartOrder() { return startOrder; }
+    public boolean isStolen() { return stolen; }
+    public double getLevel() { return level; }
+
+    public void start(int n, double freq, long order) {
+        note = n;
+        frequency = freq;
+        startOrder = order;
+        released = false;
+        // A stolen voice keeps its level and the engine keeps its phases, so the old
+        // note's waveform runs on into the new one instead of clicking
+        stolen = active;
+        active = true;
+    }
+
+    public void release() {
+        released = true;
+    }
+
+    public void kill() {
+        active = false;
+        released = false;
+        level = 0;
+    }
+
+    // Advance the attack/release envelope by one sample and return the new level
+    public double nextLevel() {
+        if (released) {
+            level -= releaseStep;
+            if (level <= 0) {
+                kill();
+            }
+        } else if (level < 1) {
+            level = Math.min(1, level + attackStep);
+        }
+        return level;
+    }
+}
@@ -0,0 +1,121 @@
+// Fixed pool of preallocated voices. When every voice is busy a new note
+// steals one according to the steal policy. Only the audio thread changes voices, notes
+// from other threads come in through Synthesis's event queue.
+public class VoicePool {
+    public static final int MAX_VOICES = 128;
+
+    public enum StealPolicy {
+        OLDEST,     // steal the voice that started first
+        QUIETEST,   // steal the voice with the lowest envelope level
+        SAME_NOTE   // retrigger a voice already playing this note, otherwise oldest
+    }
+
+    private final Voice[] voices;
+    private volatile int voiceCount;
+    private volatile StealPolicy stealPolicy = StealPolicy.OLDEST;
+    private long noteCounter = 0;
+
+    public VoicePool(int numVoices, int sampleRate) {
+        double attackStep = 1.0 / (0.005 * sampleRate);   // 5 ms attack
+        double releaseStep = 1.0 / (0.120 * sampleRate);  // 120 ms release
+        voices = new Voice[MAX_VOICES];
+        for (int i = 0; i < MAX_VOICES; i++) {
+            voices[i] = new Voice(attackStep, releaseStep);
+        }
+        voiceCount = Math.max(1, Math.min(MAX_VOICES, numVoices));
+    }
+
+    public int getVoiceCount() {
+        return voiceCount;
+    }
+
+    public void setVoiceCount(int count) {
+        int newCount = Math.max(1, Math.min(MAX_VOICES, count));
+        for (int i = newCount; i < voiceCount; i++) {
+            voices[i].kill();
+        }
+        voiceCount = newCount;
+    }
+
+    public StealPolicy getStealPolicy() {
+        return stealPolicy;
+    }
+
+    public void setStealPolicy(StealPolicy policy) {
+        stealPolicy = policy;
+    }
+
+    public Voice getVoice(int index) {
+        return voices[index];
+    }
+
+    public Voice noteOn(int note, double freq) {
+        Voice voice = null;
+        if (stealPolicy == StealPolicy.SAME_NOTE) {
+            voice = findPlaying(note);
+        }
+        if (voice == null) {
+            voice = findFree();
+        }
+        if (voice == null) {
+            voice = findVictim();
+        }
+        voice.start(note, freq, ++noteCounter);
+        return voice;
+    }
+
+    public void noteOff(int note) {
+        for (int i = 0; i < voiceCount; i++) {
+            Voice v = voices[i];
+            if (v.isActive() && !v.isReleased() && v.getNote() == note) {
+                v.release();
+            }
+        }
+    }
+
+    public void allNotesOff() {
+        for (int i = 0; i < voiceCount; i++) {
+            if (voices[i].isActive()) {
+                voices[i].release();
+            }
+        }
+    }
+
+    // Silences every voice immediately, no release
+    public void reset() {
+        for (Voice v : voices) {
+            v.kill();
+        }
+    }
+
+    private Voice findPlaying(int note) {
+        for (int i = 0; i < voiceCount; i++) {
+            if (voices[i].isActive() && voices[i].getNote() == note) {
+                return voices[i];
+            }
+        }
+        return null;
+    }
+
+    private Voice findFree() {
+        for (int i = 0; i < voiceCount; i++) {
+            if (!voices[i].isActive()) {
+                return voices[i];
+            }
+        }
+        return null;
+    }
+
+    private Voice findVictim() {
+        Voice victim = voices[0];
+        for (int i = 1; i < voiceCount; i++) {
+            Voice v = voices[i];
+            if (stealPolicy == StealPolicy.QUIETEST) {
+                if (v.getLevel() < victim.getLevel()) victim = v;
+            } else if (v.getStartOrder() < victim.getStartOrder()) {
+                victim = v;
+            }
+        }
+        return victim;
+    }
+}
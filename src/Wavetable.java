@@ -0,0 +1,73 @@
+import java.util.function.DoubleUnaryOperator;
+
+// One period of an operator's function pre-rendered into a table.
+// Lookups cost the same no matter how complex the expression is.
+public class Wavetable implements DoubleUnaryOperator {
+    public static final int LINEAR = 1;
+    public static final int CUBIC = 3;
+
+    private final String function;
+    private final String periodText;
+    private final double period;
+    private final int size;
+    private final int interpolation;
+    // data[k + 1] = f(k * period / size) for k = -1 .. size + 1 (guard points for interpolation)
+    private final double[] data;
+
+    private Wavetable(String func, String perText, double per, int n, int interp, double[] table) {
+        function = func;
+        periodText = perText;
+        period = per;
+        size = n;
+        interpolation = interp;
+        data = table;
+    }
+
+    // Returns null if the period doesn't evaluate to a usable positive number
+    public static Wavetable render(String func, String periodText, DoubleUnaryOperator evaluator, int size, int interpolation) {
+        double period = ExpressionCache.shared().constant(periodText);
+        if (!Double.isFinite(period) || period <= 0 || size < 4) {
+            return null;
+        }
+
+        double[] table = new double[size + 3];
+        for (int k = -1; k <= size + 1; k++) {
+            double value = evaluator.applyAsDouble(k * period / size);
+            table[k + 1] = Double.isFinite(value) ? value : 0;
+        }
+        return new Wavetable(func, periodText, period, size, interpolation, table);
+    }
+
+    public boolean matches(String func, String perText, int n) {
+        return size == n && function.equals(func) && periodText.equals(perText);
+    }
+
+    public Wavetable withInterpolation(int interp) {
+        if (interp == interpolation) return this;
+        return new Wavetable(function, periodText, period, size, interp, data);
+    }
+
+    public double applyAsDouble(double t) {
+        double x = t / period;
+        x -= Math.floor(x);
+        double pos = x * size;
+        int i = (int) pos;
+        if (i >= size) i = size - 1;
+        double frac = pos - i;
+
+        // i is in [0, size), so data[i .. i + 3] is always in range
+        double y0 = data[i];
+        double y1 = data[i + 1];
+        double y2 = data[i + 2];
+        if (interpolation != CUBIC) {
+            return y1 + (y2 - y1) * frac;
+        }
+
+        // 4-point Catmull-Rom
+        double y3 = data[i + 3];
+        double c1 = 0.5 * (y2 - y0);
+        double c2 = y0 - 2.5 * y1 + 2 * y2 - 0.5 * y3;
+        double c3 = 0.5 * (y3 - y0) + 1.5 * (y1 - y2);
+        return ((c3 * frac + c2) * frac + c1) * frac + y1;
+    }
+}